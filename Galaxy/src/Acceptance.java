@@ -0,0 +1,94 @@
+/**
+ * decides if a node of a BarnesHut-Octree is far enough away from a body to be used as a whole.
+ * all criteria are evaluated with squared distances, so no square root is needed.
+ * an Acceptance can't be changed, to change the criterion or theta at runtime a new one is set in the tree
+ */
+public final class Acceptance {
+
+    private final AcceptanceCriterion criterion;
+    private final double theta, theta2;
+    // for RELATIVE: the theta of the geometric criterion that is used as long as the acceleration of a body is unknown
+    private final double startTheta2;
+
+    /**
+     * creates an acceptance, for RELATIVE the geometric criterion with Config.RELATIVE_START_THETA is used
+     * as long as the acceleration of a body is unknown
+     * @param criterion the criterion
+     * @param theta the parameter of the criterion: the ratio between distance and size for GEOMETRIC and BMAX,
+     *              the relative error of the acceleration for RELATIVE
+     */
+    public Acceptance(AcceptanceCriterion criterion, double theta){
+        this(criterion, theta, Config.RELATIVE_START_THETA);
+    }
+
+    /**
+     * creates an acceptance
+     * @param criterion the criterion
+     * @param theta the parameter of the criterion: the ratio between distance and size for GEOMETRIC and BMAX,
+     *              the relative error of the acceleration for RELATIVE
+     * @param startTheta for RELATIVE: the theta of the geometric criterion that is used
+     *                   as long as the acceleration of a body is unknown, e.g. in the first step
+     */
+    public Acceptance(AcceptanceCriterion criterion, double theta, double startTheta){
+        this.criterion = criterion;
+        this.theta = theta;
+        this.theta2 = theta*theta;
+        this.startTheta2 = startTheta*startTheta;
+    }
+
+    /**
+     * creates the acceptance selected in Config.ACCEPTANCE with Config.THETA or Config.RELATIVE_ERROR
+     * @return the acceptance
+     */
+    public static Acceptance fromConfig(){
+        return new Acceptance(Config.ACCEPTANCE,
+                Config.ACCEPTANCE == AcceptanceCriterion.RELATIVE ? Config.RELATIVE_ERROR : Config.THETA);
+    }
+
+    public AcceptanceCriterion getCriterion(){ return criterion; }
+
+    public double getTheta(){ return theta; }
+
+    public double getStartTheta(){ return Math.sqrt(startTheta2); }
+
+    /**
+     * checks if a node may be used as a whole
+     * @param r2 the squared distance between the body and the centre of gravity of the node
+     * @param size the edge length of the node
+     * @param bmax2 the squared distance from the centre of gravity to the farthest corner of the node, only used by BMAX
+     * @param mass the mass of the node
+     * @param acceleration the acceleration of the body in the last force calculation, 0 if it is unknown
+     * @return true -> the node is used as a whole
+     */
+    public boolean accepts(double r2, double size, double bmax2, double mass, double acceleration){
+        double size2 = size*size;
+        switch (criterion){
+            case BMAX:
+                return r2 > theta2*bmax2;
+            case RELATIVE:
+                if(acceleration > 0){
+                    return r2 > size2 && Config.G*mass*size2 < theta*acceleration*r2*r2;
+                }
+                // without an acceleration the geometric criterion is used, e.g. in the first step
+                return r2 > startTheta2*size2;
+            case GEOMETRIC:
+            default:
+                return r2 > theta2*size2;
+        }
+    }
+
+    /**
+     * returns the squared distance from the centre of gravity of a node to its farthest corner, needed by BMAX
+     * @param hx half of the length of the node in x
+     * @param hy half of the width of the node in y
+     * @param hz half of the height of the node in z
+     * @param ox the x-component of the offset between the centre of gravity and the centre of the node
+     * @param oy the y-component of the offset
+     * @param oz the z-component of the offset
+     * @return bmax^2
+     */
+    public static double bmax2(double hx, double hy, double hz, double ox, double oy, double oz){
+        double bx = hx + Math.abs(ox), by = hy + Math.abs(oy), bz = hz + Math.abs(oz);
+        return bx*bx + by*by + bz*bz;
+    }
+}
@@ -0,0 +1,24 @@
+/**
+ * the available criteria that decide if a node of a BarnesHut-Octree is used as a whole, see Acceptance
+ */
+public enum AcceptanceCriterion {
+    /**
+     * the node is used if r > theta*d, where r is the distance to its centre of gravity and d its edge length
+     */
+    GEOMETRIC,
+
+    /**
+     * the criterion of Salmon and Warren: the node is used if r > theta*bmax,
+     * where bmax is the distance from the centre of gravity to the farthest corner of the node.
+     * a node whose centre of gravity is near its border is opened earlier than with GEOMETRIC
+     */
+    BMAX,
+
+    /**
+     * the node is used if the estimated error G*M*d^2/r^4 of its monopole is smaller than theta times
+     * the acceleration of the body in the last force calculation, and the body is farther away than d.
+     * so the bodies with a big acceleration (near a black hole) open less nodes.
+     * as long as the acceleration is unknown the geometric criterion with Config.RELATIVE_START_THETA is used
+     */
+    RELATIVE
+}
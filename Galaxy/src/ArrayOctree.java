@@ -0,0 +1,1487 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * represents an implementation of an BarnesHut-Octree that keeps its nodes in primitive parallel arrays
+ * instead of a graph of node objects.
+ * A node is addressed by its index, the root always has the index 0.
+ * The arrays are kept when the tree is cleared, so once they are big enough
+ * building the tree doesn't allocate anything.
+ * Attention the area is split like in Boundary3D.split, the octants are numbered like in Boundary3D.whichOctant
+ */
+public class ArrayOctree implements BarnesHutOctree {
+
+    /**
+     * marks a missing child node or the end of the body list of a leaf
+     */
+    static final int NONE = -1;
+
+    /**
+     * marks a node as inner node in firstBody
+     */
+    static final int INNER = -2;
+
+    /**
+     * the maximum depth of the tree, bodies that end up in the same leaf on this depth are kept together
+     * even if there are more than the leaf capacity
+     */
+    static final int MAX_DEPTH = 21;
+
+    // the number of bodies a thread handles at least when the forces are calculated in parallel
+    private static final int PARALLEL_GRAIN = 64;
+
+    // the area of the root, with Config.ADAPTIVE_BOUNDS a tight cube around the bodies of the last build
+    private Boundary3D area;
+    // the ratios between the dimensions of the area, the nodes only store half of the width (y)
+    private double ratioL, ratioH;
+    // the number of bodies a leaf keeps before it is split
+    private final int leafCapacity;
+
+    // nodes
+    private int nodeCount;
+    private IntArray child;         // 8 entries per node, NONE if the octant is empty
+    private IntArray firstBody;     // first body of the list of a leaf, NONE for an empty leaf, INNER for an inner node
+    private DoubleArray mass;
+    private DoubleArray comX, comY, comZ;
+    private DoubleArray centerX, centerY, centerZ;
+    private DoubleArray halfWidth;
+    // how far the bodies of a subtree stick out of the cell of its node after refits, in units of halfWidth's axis
+    private DoubleArray slack;
+    // the depth-first links for the force calculation, see link()
+    private IntArray firstChild;    // the first existing child of an inner node
+    private IntArray skip;          // the node that follows the subtree of a node, NONE after the last one
+    private boolean linked;
+    // the quadrupole moments about the centre of gravity, only allocated if Config.QUADRUPOLE is set (qzz = -qxx-qyy)
+    private DoubleArray quadXX, quadXY, quadXZ, quadYY, quadYZ;
+    private boolean quadrupoles;    // false -> a cluster has changed since the moments were computed
+
+    // for TreePmSolver: the split radius of the short-range force (0 -> the full force) and the squared cutoff radius
+    private double splitRadius, cutoff2;
+
+    // bodies
+    private int bodyCount;
+    private CelestialBody[] bodies;
+    private IntArray nextBody;      // next body in the same leaf, NONE at the end of the list
+    private IntArray storeIndex;    // index of the body in the store given to addAll, NONE if added by add
+    private DoubleArray bodyX, bodyY, bodyZ, bodyMass;
+
+    // used to sort the bodies for the build from Morton keys
+    private final MortonKeys mortonKeys;
+
+    // used for the parallel build, the subtrees are built in helper trees and copied into this tree afterwards
+    private final ArrayList<ArrayOctree> subtrees = new ArrayList<>();
+    private final ArrayList<SubtreeTask> subtreeTasks = new ArrayList<>();
+    private int[] topNodes = new int[16];
+    private int topNodeCount;
+
+    // used for the refit, the store of the last build and the number of nodes after it
+    private BodyStore builtStore;
+    private int builtOrder;         // the reorder count of the store at the build, the refit needs the same order
+    private int builtNodeCount;
+    private int[] migrated = new int[16];
+    // the number of calls of update that rebuilt the tree and that refitted it
+    private long rebuildCount, refitCount;
+
+    // with Config.ADAPTIVE_BOUNDS: the bodies of the built store that lie outside of the area,
+    // they are not in the tree and their attraction is summed up directly
+    private final RootBounds rootBounds = new RootBounds();
+    private int[] escapers = new int[16];
+    private int escaperCount;
+
+    // used for the grouped walk, the number of bodies in the subtree of each node and the roots of the groups
+    private int[] subtreeSize = new int[16];
+    private int[] groups = new int[16];
+    private int groupCount;
+
+    // the criterion for the nodes, and for AcceptanceCriterion.RELATIVE the acceleration of each body of a store in the last calculation
+    private Acceptance acceptance = Acceptance.fromConfig();
+    private BodyStore accelerationStore;
+    private int accelerationOrder;
+    private double[] lastAcceleration = new double[16];
+
+    // the interaction list and buffers of each thread, kept between the force calculations
+    private final ThreadLocal<InteractionList> lists = ThreadLocal.withInitial(InteractionList::new);
+
+    /**
+     * creates a new BarnesHut-Octree with a given area in space
+     * @param area the given area
+     */
+    public ArrayOctree(Boundary3D area){
+        this(area, 16);
+    }
+
+    /**
+     * creates a new BarnesHut-Octree with a given area in space
+     * and reserves enough memory for the expected number of bodies
+     * @param area the given area
+     * @param expectedBodies the number of bodies that will probably be added
+     */
+    public ArrayOctree(Boundary3D area, int expectedBodies){
+        this(area, expectedBodies, Config.LEAF_CAPACITY);
+    }
+
+    /**
+     * creates a new BarnesHut-Octree with a given area in space and leaf capacity
+     * and reserves enough memory for the expected number of bodies
+     * @param area the given area
+     * @param expectedBodies the number of bodies that will probably be added
+     * @param leafCapacity the number of bodies a leaf keeps before it is split, at least 1
+     */
+    public ArrayOctree(Boundary3D area, int expectedBodies, int leafCapacity){
+        if(leafCapacity < 1) throw new IllegalArgumentException("the leaf capacity must be at least 1: " + leafCapacity);
+        this.area = area;
+        this.leafCapacity = leafCapacity;
+        this.ratioL = area.getL()/area.getW();
+        this.ratioH = area.getH()/area.getW();
+        this.mortonKeys = new MortonKeys();
+        int bodyCapacity = Math.max(expectedBodies, 1);
+        allocateNodes(2*bodyCapacity);
+        allocateBodies(bodyCapacity);
+    }
+
+    /**
+     * creates a helper tree for the parallel build, it shares the bodies and keys with the given tree
+     * but has its own nodes
+     * @param tree the tree to help
+     */
+    private ArrayOctree(ArrayOctree tree){
+        this.area = tree.area;
+        this.ratioL = tree.ratioL;
+        this.ratioH = tree.ratioH;
+        this.leafCapacity = tree.leafCapacity;
+        this.mortonKeys = tree.mortonKeys;
+        allocateNodes(16);
+    }
+
+    /**
+     * adds a body to the tree and returns if the operation succeeded
+     * @param body the body to be added
+     * @return the result of the operation
+     */
+    @Override
+    public boolean add(CelestialBody body) {
+        if(!area.contains(body)){return false;}
+        if(nodeCount == 0){
+            newNode(area.getX(), area.getY(), area.getZ(), area.getW()/2);
+        }
+        insert(newBody(body));
+        builtStore = null;
+        return true;
+    }
+
+    /**
+     * adds all bodies of the store that aren't excluded yet to the tree.
+     * if the tree is empty and Config.MORTON_BUILD is set, the bodies are sorted by their Morton keys
+     * and the tree is built bottom-up from the sorted key ranges instead of inserting the bodies one by one.
+     * with Config.PARALLEL_BUILD the subtrees of the key ranges are built in parallel.
+     * with Config.ADAPTIVE_BOUNDS an empty tree is built on the bounding cube of the bodies,
+     * padded by Config.ROOT_PADDING. the bodies outside of it are kept as escapers instead of being excluded
+     * @param store the store with the bodies
+     * @return the number of bodies that were excluded by this call
+     */
+    @Override
+    public int addAll(BodyStore store) {
+        boolean wasEmpty = nodeCount == 0;
+        return addAll(store, wasEmpty && Config.ADAPTIVE_BOUNDS ? RootBounds.padded(rootBounds.compute(store, area)) : null);
+    }
+
+    /**
+     * adds all bodies of the store that aren't excluded yet to the tree
+     * @param store the store with the bodies
+     * @param bounds the new area of the empty tree, null -> the area is kept
+     * @return the number of bodies that were excluded by this call
+     */
+    private int addAll(BodyStore store, Boundary3D bounds) {
+        boolean wasEmpty = nodeCount == 0;
+        if(bounds != null) setArea(bounds);
+        if(wasEmpty) escaperCount = 0;
+        int firstNew = bodyCount;
+        int newlyExcluded = 0;
+        for(int i=0; i<store.size(); i++){
+            if(store.isExcluded(i)) continue;
+            if(area.contains(store.getX(i), store.getY(i), store.getZ(i))){
+                newBody(store, i);
+            } else if(Config.ADAPTIVE_BOUNDS){
+                addEscaper(i);
+            } else {
+                store.exclude(i);
+                newlyExcluded++;
+            }
+        }
+        if(!Config.MORTON_BUILD || !wasEmpty){
+            if(bodyCount > 0 && nodeCount == 0){
+                newNode(area.getX(), area.getY(), area.getZ(), area.getW()/2);
+            }
+            for(int b=firstNew; b<bodyCount; b++){
+                insert(b);
+            }
+        } else if(bodyCount > 0){
+            mortonKeys.compute(area, bodyX, bodyY, bodyZ, bodyCount);
+            mortonKeys.sort();
+            int root = newNode(area.getX(), area.getY(), area.getZ(), area.getW()/2);
+            if(Config.PARALLEL_BUILD && Parallel.getParallelism() > 1){
+                buildParallel(root);
+            } else {
+                buildRange(root, 0, bodyCount, 0);
+            }
+        }
+        builtStore = wasEmpty ? store : null;
+        builtOrder = store.getReorderCount();
+        builtNodeCount = nodeCount;
+        return newlyExcluded;
+    }
+
+    /**
+     * updates the tree to the new positions of the bodies.
+     * if Config.TREE_REFIT is set and the tree was built from the same store, the tree is kept with its topology:
+     * a body that left the cell of its leaf stays in the leaf, the mass, centre of gravity and slack of the nodes
+     * are recomputed bottom-up, so the walk sees the cells grown by the distance the bodies stick out of them.
+     * if more than Config.REFIT_MAX_MIGRATED of the bodies lie further than Config.REFIT_MAX_SLACK outside
+     * of their cells the scan stops and the tree is rebuilt, as well as if the tree has grown too much.
+     * with Config.ADAPTIVE_BOUNDS the tree is also rebuilt if the bounding cube of the bodies
+     * doesn't fit into the padded root anymore or the root is more than twice as big as the padded cube.
+     * bodies that leave the root during a refit become escapers
+     * @param store the store with the bodies
+     * @return the number of bodies that were excluded by this call
+     */
+    @Override
+    public int update(BodyStore store) {
+        Boundary3D bounds = Config.ADAPTIVE_BOUNDS ? RootBounds.padded(rootBounds.compute(store, area)) : null;
+        if(!Config.TREE_REFIT || store != builtStore || builtOrder != store.getReorderCount() || nodeCount == 0
+                || (bounds != null && !fits(bounds))){
+            rebuildCount++;
+            clear();
+            return addAll(store, bounds);
+        }
+        int newlyExcluded = 0;
+        int migratedCount = 0, strayed = 0;
+        double maxStrayed = Config.REFIT_MAX_MIGRATED*bodyCount;
+        // the old escapers are checked after the refit, the bodies that leave the area now are added to them
+        int oldEscapers = escaperCount;
+        for(int node=0; node<nodeCount; node++){
+            if(strayed > maxStrayed){
+                rebuildCount++;
+                clear();
+                return newlyExcluded + addAll(store, bounds);
+            }
+            int prev = NONE;
+            int b = firstBody.get(node);
+            while(b >= 0){
+                int next = nextBody.get(b);
+                int i = storeIndex.get(b);
+                double x = store.getX(i), y = store.getY(i), z = store.getZ(i);
+                bodyX.set(b, x); bodyY.set(b, y); bodyZ.set(b, z);
+                if(!store.isExcluded(i) && area.contains(x, y, z)){
+                    // the body stays in its leaf, also if it left the cell
+                    if(!leafContains(node, x, y, z, 1 + Config.REFIT_MAX_SLACK)) strayed++;
+                    prev = b;
+                } else {
+                    // unlink the body from its leaf
+                    if(prev == NONE) firstBody.set(node, next);
+                    else nextBody.set(prev, next);
+                    if(store.isExcluded(i)){
+                        // excluded by another solver on the same store, e.g. the mesh of the TreePmSolver
+                    } else if(bounds != null){
+                        addEscaper(i);
+                    } else {
+                        store.exclude(i);
+                        newlyExcluded++;
+                    }
+                }
+                b = next;
+            }
+        }
+        // the escapers that came back into the area are inserted as new bodies
+        int kept = 0;
+        for(int k=0; k<escaperCount; k++){
+            int i = escapers[k];
+            if(store.isExcluded(i)) continue;
+            if(k < oldEscapers && area.contains(store.getX(i), store.getY(i), store.getZ(i))){
+                migrated = addTo(migrated, migratedCount++, newBody(store, i));
+            } else {
+                escapers[kept++] = i;
+            }
+        }
+        escaperCount = kept;
+        if(strayed + migratedCount > maxStrayed){
+            rebuildCount++;
+            clear();
+            return newlyExcluded + addAll(store, bounds);
+        }
+        for(int i=0; i<migratedCount; i++){
+            insert(migrated[i]);
+        }
+        if(nodeCount > Config.REFIT_MAX_GROWTH*builtNodeCount){
+            rebuildCount++;
+            clear();
+            return newlyExcluded + addAll(store, bounds);
+        }
+        // children always have a bigger index than their parents, so we can recompute the clusters bottom-up
+        for(int node=nodeCount-1; node>=0; node--){
+            if(firstBody.get(node) == INNER){
+                mergeChildren(node);
+            } else {
+                computeLeaf(node);
+            }
+        }
+        refitCount++;
+        return newlyExcluded;
+    }
+
+    /**
+     * removes all bodies from the tree, the allocated memory is kept for the next build
+     */
+    @Override
+    public void clear() {
+        Arrays.fill(bodies, 0, bodyCount, null);
+        bodyCount = 0;
+        nodeCount = 0;
+        escaperCount = 0;
+        linked = false;
+        builtStore = null;
+    }
+
+    /**
+     * sets the area of the root, the tree has to be empty
+     * @param area the new area
+     */
+    private void setArea(Boundary3D area){
+        this.area = area;
+        this.ratioL = area.getL()/area.getW();
+        this.ratioH = area.getH()/area.getW();
+    }
+
+    /**
+     * checks if the tree can be kept for a new padded bounding cube of the bodies:
+     * the bounding cube itself has to lie in the area and the area must not be more than twice as big as the padded cube
+     * @param bounds the padded bounding cube
+     * @return true -> the tree can be kept
+     */
+    private boolean fits(Boundary3D bounds){
+        double hw = bounds.getW()/(2*(1 + Config.ROOT_PADDING));
+        double ahw = area.getW()/2;
+        return 2*bounds.getW() >= area.getW()
+                && bounds.getX()-hw >= area.getX()-ahw && bounds.getX()+hw <= area.getX()+ahw
+                && bounds.getY()-hw >= area.getY()-ahw && bounds.getY()+hw <= area.getY()+ahw
+                && bounds.getZ()-hw >= area.getZ()-ahw && bounds.getZ()+hw <= area.getZ()+ahw;
+    }
+
+    /**
+     * adds a body of the store to the escapers
+     * @param i the index of the body in the store
+     */
+    private void addEscaper(int i){
+        escapers = addTo(escapers, escaperCount++, i);
+    }
+
+    /**
+     * sets an entry of an array and doubles the array if it is too small
+     * @return the array, or the bigger copy
+     */
+    private static int[] addTo(int[] array, int index, int value){
+        if(index == array.length){
+            array = Arrays.copyOf(array, 2*index);
+        }
+        array[index] = value;
+        return array;
+    }
+
+    /**
+     * adds the attraction of the escapers to acc, a escaper doesn't attract itself
+     * @param store the store with the bodies, the escapers are only known for the store of the last build
+     * @param self the index of the body in the store
+     */
+    private void addEscapers(BodyStore store, int self, double x, double y, double z, double[] acc){
+        if(store != builtStore) return;
+        for(int k=0; k<escaperCount; k++){
+            int i = escapers[k];
+            if(i == self) continue;
+            addAttraction(store.getX(i), store.getY(i), store.getZ(i), store.getMass(i), x, y, z, acc);
+        }
+    }
+
+    /**
+     * sets the criterion that decides if a node is used as a whole, it is used from the next force calculation on
+     * @param acceptance the criterion and its theta
+     */
+    @Override
+    public void setAcceptance(Acceptance acceptance) {
+        this.acceptance = acceptance;
+    }
+
+    /**
+     * limits the forces of the tree to the short-range part of a TreePM split, see GravityKernel.shortRange.
+     * nodes farther away than Config.TREEPM_CUTOFF split radii are skipped without opening them,
+     * the quadrupole moments are not used for the short-range force
+     * @param splitRadius the split radius, 0 -> the full force
+     */
+    public void setSplitRadius(double splitRadius){
+        this.splitRadius = splitRadius;
+        double cutoff = Config.TREEPM_CUTOFF*splitRadius;
+        this.cutoff2 = cutoff*cutoff;
+    }
+
+    /**
+     * draws the boundaries of the not empty leaf nodes
+     */
+    @Override
+    public void show() {
+        for(int node=0; node<nodeCount; node++){
+            if(firstBody.get(node) >= 0){
+                double w = 2*halfWidth.get(node);
+                Boundary3D leafArea = new Boundary3D(centerX.get(node), centerY.get(node), centerZ.get(node), w*ratioL, w, w*ratioH);
+                leafArea.show(bodies[firstBody.get(node)].getColor());
+            }
+        }
+    }
+
+    /**
+     * calculates the force acting on each body in the array,
+     * assuming the body itself is part of the tree
+     * @param bodyList a array with the bodies
+     * @return a array of the forces acting on the bodies
+     */
+    @Override
+    public Vector3[] calculateForce(CelestialBody[] bodyList) {
+        prepareWalk();
+        Vector3[] forceList = new Vector3[bodyList.length];
+        Acceptance acceptance = this.acceptance;
+        if(Config.PARALLEL_FORCE){
+            // the tree is only read, so each thread can walk it for its own range of bodies
+            Parallel.forRange(bodyList.length, PARALLEL_GRAIN, (from, to) -> calculateForce(bodyList, forceList, acceptance, from, to));
+        } else {
+            calculateForce(bodyList, forceList, acceptance, 0, bodyList.length);
+        }
+        return forceList;
+    }
+
+    /**
+     * calculates the force acting on each body in the store that is not excluded,
+     * the index in the result is the index in the store
+     * @param store the store with the bodies
+     * @return a array of the forces acting on the bodies
+     */
+    @Override
+    public Vector3[] calculateForce(BodyStore store) {
+        int n = store.size();
+        double[] fx = new double[n], fy = new double[n], fz = new double[n];
+        calculateForce(store, fx, fy, fz);
+        return ForceSolver.toVectors(fx, fy, fz, n);
+    }
+
+    /**
+     * calculates the force acting on some bodies of the store that are not excluded
+     * @param store the store with the bodies
+     * @param indices the indices of the bodies in the store
+     * @param n the number of indices
+     * @return a array of the forces acting on the bodies, the force on the body indices[k] has the index k
+     */
+    @Override
+    public Vector3[] calculateForce(BodyStore store, int[] indices, int n) {
+        double[] fx = new double[store.size()], fy = new double[store.size()], fz = new double[store.size()];
+        calculateForce(store, indices, n, fx, fy, fz);
+        Vector3[] forceList = new Vector3[n];
+        for(int k=0; k<n; k++){
+            int i = indices[k];
+            forceList[k] = new Vector3(fx[i], fy[i], fz[i]);
+        }
+        return forceList;
+    }
+
+    /**
+     * calculates the force acting on each body in the store and writes it into the arrays at the index of the body.
+     * no objects are created for the bodies, the buffers of the walk are kept per thread
+     * @param store the store with the bodies
+     * @param fx the x-components of the forces, at least store.size() entries
+     * @param fy the y-components of the forces
+     * @param fz the z-components of the forces
+     */
+    @Override
+    public void calculateForce(BodyStore store, double[] fx, double[] fy, double[] fz) {
+        prepareWalk();
+        Acceptance acceptance = this.acceptance;
+        prepareAccelerations(store);
+        if(Config.GROUPED_WALK && store == builtStore){
+            calculateGroupForce(store, acceptance, fx, fy, fz);
+            return;
+        }
+        Parallel.RangeTask task = (from, to) -> {
+            double[] acc = lists.get().acc;
+            for(int i=from; i<to; i++){
+                calculateForce(store, i, acceptance, acc, fx, fy, fz);
+            }
+        };
+        if(Config.PARALLEL_FORCE){
+            Parallel.forRange(store.size(), PARALLEL_GRAIN, task);
+        } else {
+            task.run(0, store.size());
+        }
+    }
+
+    /**
+     * calculates the force acting on some bodies of the store and writes it into the arrays at the index of the body
+     * @param store the store with the bodies
+     * @param indices the indices of the bodies in the store
+     * @param n the number of indices
+     * @param fx the x-components of the forces, at least store.size() entries
+     * @param fy the y-components of the forces
+     * @param fz the z-components of the forces
+     */
+    @Override
+    public void calculateForce(BodyStore store, int[] indices, int n, double[] fx, double[] fy, double[] fz) {
+        prepareWalk();
+        Acceptance acceptance = this.acceptance;
+        prepareAccelerations(store);
+        Parallel.RangeTask task = (from, to) -> {
+            double[] acc = lists.get().acc;
+            for(int k=from; k<to; k++){
+                calculateForce(store, indices[k], acceptance, acc, fx, fy, fz);
+            }
+        };
+        if(Config.PARALLEL_FORCE){
+            Parallel.forRange(n, PARALLEL_GRAIN, task);
+        } else {
+            task.run(0, n);
+        }
+    }
+
+    /**
+     * calculates the force acting on one body of the store and writes it into the arrays at the index of the body,
+     * the force is zero if the body is excluded or not in the area (without Config.ADAPTIVE_BOUNDS)
+     * @param store the store with the bodies
+     * @param i the index of the body in the store
+     * @param acceptance the criterion for the nodes
+     * @param acc a buffer for the accumulated attraction
+     */
+    private void calculateForce(BodyStore store, int i, Acceptance acceptance, double[] acc, double[] fx, double[] fy, double[] fz){
+        double x = store.getX(i), y = store.getY(i), z = store.getZ(i);
+        if(nodeCount == 0 || store.isExcluded(i) || (!Config.ADAPTIVE_BOUNDS && !area.contains(x, y, z))){
+            fx[i] = 0; fy[i] = 0; fz[i] = 0;
+            return;
+        }
+        acc[0] = 0; acc[1] = 0; acc[2] = 0;
+        accumulate(store.getBody(i), x, y, z, acceptance, lastAcceleration[i], acc);
+        addEscapers(store, i, x, y, z, acc);
+        if(acceptance.getCriterion() == AcceptanceCriterion.RELATIVE){
+            lastAcceleration[i] = Config.G*Math.sqrt(acc[0]*acc[0] + acc[1]*acc[1] + acc[2]*acc[2]);
+        }
+        double f = Config.G*store.getMass(i);
+        fx[i] = acc[0]*f; fy[i] = acc[1]*f; fz[i] = acc[2]*f;
+    }
+
+    /**
+     * makes sure there is an acceleration for each body of the store,
+     * they are reset to 0 (unknown) if the accelerations belong to another store
+     * and follow the bodies if the store was reordered
+     * @param store the store with the bodies
+     */
+    private void prepareAccelerations(BodyStore store){
+        if(lastAcceleration.length < store.size()){
+            lastAcceleration = Arrays.copyOf(lastAcceleration, Math.max(store.size(), 2*lastAcceleration.length));
+        }
+        if(store == accelerationStore && accelerationOrder + 1 == store.getReorderCount()){
+            store.permute(lastAcceleration);
+        } else if(store != accelerationStore || accelerationOrder != store.getReorderCount()){
+            Arrays.fill(lastAcceleration, 0);
+            accelerationStore = store;
+        }
+        accelerationOrder = store.getReorderCount();
+    }
+
+    /**
+     * calculates the force acting on the bodies with an index in [from, to)
+     * @param bodyList a array with the bodies
+     * @param forceList the array the forces are written to
+     * @param acceptance the criterion for the nodes
+     * @param from the first index
+     * @param to the index after the last one
+     */
+    private void calculateForce(CelestialBody[] bodyList, Vector3[] forceList, Acceptance acceptance, int from, int to){
+        double[] acc = new double[3];
+        for(int i=from; i<to; i++){
+            CelestialBody body = bodyList[i];
+            if(nodeCount == 0 || (!Config.ADAPTIVE_BOUNDS && !area.contains(body))){
+                forceList[i] = new Vector3(0,0,0);
+                continue;
+            }
+            acc[0] = 0; acc[1] = 0; acc[2] = 0;
+            // the accelerations of the last step are only known for the bodies of a store
+            accumulate(body, body.getX(), body.getY(), body.getZ(), acceptance, 0, acc);
+            double f = Config.G*body.getMass();
+            forceList[i] = new Vector3(acc[0]*f, acc[1]*f, acc[2]*f);
+        }
+    }
+
+    /**
+     * calculates the force acting on each body of the tree with one walk per group of nearby bodies.
+     * a group is the smallest subtree with at most Config.GROUP_SIZE bodies, or a bigger leaf.
+     * the walk for a group collects the accepted nodes and the bodies of the opened leaves in an interaction list,
+     * the list is then summed up for each body of the group.
+     * a node is only accepted if the criterion holds for the nearest point of the bounding box of the group,
+     * so it holds for every body of the group as well.
+     * the tree has to be built from the store, the index in the result is the index in the store
+     * @param store the store with the bodies
+     * @param acceptance the criterion for the nodes
+     * @param fx the x-components of the forces, at least store.size() entries
+     * @param fy the y-components of the forces
+     * @param fz the z-components of the forces
+     */
+    private void calculateGroupForce(BodyStore store, Acceptance acceptance, double[] fx, double[] fy, double[] fz){
+        collectGroups();
+        Parallel.RangeTask task = (from, to) -> {
+            InteractionList list = lists.get();
+            for(int g=from; g<to; g++){
+                calculateGroupForce(groups[g], acceptance, list, fx, fy, fz);
+            }
+        };
+        if(Config.PARALLEL_FORCE){
+            Parallel.forRange(groupCount, 1, task);
+        } else {
+            task.run(0, groupCount);
+        }
+        // the escapers are not in the tree, their walk is done one by one
+        double[] acc = lists.get().acc;
+        for(int k=0; k<escaperCount; k++){
+            calculateForce(store, escapers[k], acceptance, acc, fx, fy, fz);
+        }
+        // the excluded bodies are not in the tree
+        for(int i=0; i<store.size(); i++){
+            if(store.isExcluded(i)){
+                fx[i] = 0; fy[i] = 0; fz[i] = 0;
+            }
+        }
+    }
+
+    /**
+     * splits the tree into groups: computes the number of bodies in each subtree bottom-up
+     * and walks down until the subtrees are small enough
+     */
+    private void collectGroups(){
+        if(subtreeSize.length < nodeCount){
+            subtreeSize = new int[Math.max(nodeCount, 2*subtreeSize.length)];
+        }
+        for(int node=nodeCount-1; node>=0; node--){
+            int first = firstBody.get(node);
+            if(first != INNER){
+                subtreeSize[node] = leafSize(first);
+            } else {
+                int n = 0;
+                for(int i=0; i<8; i++){
+                    int c = child.get(node*8+i);
+                    if(c != NONE) n += subtreeSize[c];
+                }
+                subtreeSize[node] = n;
+            }
+        }
+        groupCount = 0;
+        int node = nodeCount > 0 ? 0 : NONE;
+        while(node != NONE){
+            if(subtreeSize[node] <= Config.GROUP_SIZE || firstBody.get(node) != INNER){
+                if(subtreeSize[node] > 0){
+                    if(groupCount == groups.length){
+                        groups = Arrays.copyOf(groups, 2*groupCount);
+                    }
+                    groups[groupCount++] = node;
+                }
+                node = skip.get(node);
+            } else {
+                node = firstChild.get(node);
+            }
+        }
+    }
+
+    /**
+     * calculates the force acting on the bodies of one group
+     * @param group the root of the subtree of the group
+     * @param acceptance the criterion for the nodes
+     * @param list the buffers for the interaction list
+     * @param fx the x-components of the forces, written at the index in the store
+     * @param fy the y-components of the forces
+     * @param fz the z-components of the forces
+     */
+    private void calculateGroupForce(int group, Acceptance acceptance, InteractionList list, double[] fx, double[] fy, double[] fz){
+        // collect the bodies of the group, their bounding box and their smallest acceleration
+        list.clear();
+        double minX = Double.MAX_VALUE, minY = Double.MAX_VALUE, minZ = Double.MAX_VALUE;
+        double maxX = -Double.MAX_VALUE, maxY = -Double.MAX_VALUE, maxZ = -Double.MAX_VALUE;
+        double acceleration = Double.MAX_VALUE;
+        int end = skip.get(group);
+        int node = group;
+        while(node != end){
+            int first = firstBody.get(node);
+            if(first == INNER){
+                node = firstChild.get(node);
+                continue;
+            }
+            for(int b = first; b != NONE; b = nextBody.get(b)){
+                list.addTarget(b);
+                acceleration = Math.min(acceleration, lastAcceleration[storeIndex.get(b)]);
+                double x = bodyX.get(b), y = bodyY.get(b), z = bodyZ.get(b);
+                minX = Math.min(minX, x); minY = Math.min(minY, y); minZ = Math.min(minZ, z);
+                maxX = Math.max(maxX, x); maxY = Math.max(maxY, y); maxZ = Math.max(maxZ, z);
+            }
+            node = skip.get(node);
+        }
+        // walk the tree once for the whole group
+        node = 0;
+        while(node != NONE){
+            if(splitRadius > 0 && beyondCutoff(node, minX, minY, minZ, maxX, maxY, maxZ)){
+                node = skip.get(node);
+                continue;
+            }
+            int first = firstBody.get(node);
+            if(first != INNER){
+                for(int b = first; b != NONE; b = nextBody.get(b)){
+                    list.add(bodyX.get(b), bodyY.get(b), bodyZ.get(b), bodyMass.get(b));
+                }
+                node = skip.get(node);
+                continue;
+            }
+            double m = mass.get(node);
+            if(m == 0){
+                node = skip.get(node);
+                continue;
+            }
+            double cx = comX.get(node), cy = comY.get(node), cz = comZ.get(node);
+            // the distance from the centre of gravity to the nearest point of the bounding box
+            double dx = Math.max(0, Math.max(minX-cx, cx-maxX));
+            double dy = Math.max(0, Math.max(minY-cy, cy-maxY));
+            double dz = Math.max(0, Math.max(minZ-cz, cz-maxZ));
+            if(accepts(acceptance, node, dx*dx + dy*dy + dz*dz, m, acceleration)){
+                list.add(cx, cy, cz, m);
+                if(Config.QUADRUPOLE && splitRadius == 0) list.addNode(node);
+                node = skip.get(node);
+            } else {
+                node = firstChild.get(node);
+            }
+        }
+        // sum up the list for each body of the group, the body itself is in the list but has the distance 0
+        double[] acc = list.acc;
+        for(int t=0; t<list.targetCount; t++){
+            int b = list.targets[t];
+            acc[0] = 0; acc[1] = 0; acc[2] = 0;
+            double x = bodyX.get(b), y = bodyY.get(b), z = bodyZ.get(b);
+            if(splitRadius > 0){
+                GravityKernel.accumulateShortRange(x, y, z, list.x, list.y, list.z, list.m, 0, list.size, splitRadius, list.buffer, list.distances, acc);
+            } else {
+                GravityKernel.accumulate(x, y, z, list.x, list.y, list.z, list.m, 0, list.size, list.buffer, acc);
+            }
+            for(int k=0; k<list.nodeCount; k++){
+                int n = list.nodes[k];
+                addQuadrupole(n, comX.get(n)-x, comY.get(n)-y, comZ.get(n)-z, acc);
+            }
+            addEscapers(builtStore, storeIndex.get(b), x, y, z, acc);
+            if(acceptance.getCriterion() == AcceptanceCriterion.RELATIVE){
+                lastAcceleration[storeIndex.get(b)] = Config.G*Math.sqrt(acc[0]*acc[0] + acc[1]*acc[1] + acc[2]*acc[2]);
+            }
+            double f = Config.G*bodyMass.get(b);
+            int i = storeIndex.get(b);
+            fx[i] = acc[0]*f; fy[i] = acc[1]*f; fz[i] = acc[2]*f;
+        }
+    }
+
+    /**
+     * the interaction list of a group: the accepted nodes and the bodies of the opened leaves,
+     * and the bodies of the group. each thread uses its own list
+     */
+    private static class InteractionList {
+        private double[] x = new double[64], y = new double[64], z = new double[64], m = new double[64];
+        private double[] buffer = new double[64], distances = new double[64];  // for the GravityKernel
+        private int size;
+        private int[] targets = new int[16];    // the bodies of the group
+        private int targetCount;
+        private int[] nodes = new int[16];      // the accepted nodes, for their quadrupole moments
+        private int nodeCount;
+        private final double[] acc = new double[3];
+
+        void clear(){
+            size = 0;
+            targetCount = 0;
+            nodeCount = 0;
+        }
+
+        void addNode(int node){
+            if(nodeCount == nodes.length){
+                nodes = Arrays.copyOf(nodes, 2*nodeCount);
+            }
+            nodes[nodeCount++] = node;
+        }
+
+        void add(double px, double py, double pz, double pm){
+            if(size == x.length){
+                x = Arrays.copyOf(x, 2*size); y = Arrays.copyOf(y, 2*size); z = Arrays.copyOf(z, 2*size);
+                m = Arrays.copyOf(m, 2*size);
+                buffer = new double[2*size];
+                distances = new double[2*size];
+            }
+            x[size] = px; y[size] = py; z[size] = pz;
+            m[size] = pm;
+            size++;
+        }
+
+        void addTarget(int b){
+            if(targetCount == targets.length){
+                targets = Arrays.copyOf(targets, 2*targetCount);
+            }
+            targets[targetCount++] = b;
+        }
+    }
+
+    /**
+     * returns the number of nodes in the tree, including empty leaves
+     * @return the number of nodes
+     */
+    public int getNodeCount(){
+        return nodeCount;
+    }
+
+    /**
+     * returns the number of calls of update that built the tree from scratch, see Config.TREE_REFIT
+     * @return the number of rebuilds
+     */
+    public long getRebuildCount(){
+        return rebuildCount;
+    }
+
+    /**
+     * returns the number of calls of update that kept the tree and only moved the migrated bodies
+     * @return the number of refits
+     */
+    public long getRefitCount(){
+        return refitCount;
+    }
+
+    /**
+     * adds the attraction of the tree to acc, according to the BarnesHut algorithm.
+     * the tree is walked in a loop along the depth-first links: if a node is accepted or a leaf,
+     * the walk continues with the node after its subtree, otherwise with its first child.
+     * so there is no recursion and no stack, and the nodes of a Morton build are visited in the order of their indices.
+     * the result is not yet multiplied with G and the mass of the body
+     * @param body the body the force is acting on, it is skipped if it is found in a leaf
+     * @param x the x-coordinate of the body
+     * @param y the y-coordinate of the body
+     * @param z the z-coordinate of the body
+     * @param acceptance the criterion for the nodes
+     * @param acceleration the acceleration of the body in the last calculation, 0 if it is unknown
+     * @param acc the accumulated attraction {x, y, z}
+     */
+    private void accumulate(CelestialBody body, double x, double y, double z, Acceptance acceptance, double acceleration, double[] acc){
+        int node = 0;
+        while(node != NONE){
+            if(splitRadius > 0 && beyondCutoff(node, x, y, z, x, y, z)){
+                node = skip.get(node);
+                continue;
+            }
+            int first = firstBody.get(node);
+            if(first != INNER){
+                // a leaf: sum up the bodies directly
+                for(int b = first; b != NONE; b = nextBody.get(b)){
+                    if(bodies[b] != body){
+                        addAttraction(bodyX.get(b), bodyY.get(b), bodyZ.get(b), bodyMass.get(b), x, y, z, acc);
+                    }
+                }
+                node = skip.get(node);
+                continue;
+            }
+            double m = mass.get(node);
+            // after a refit a node may have lost all its bodies
+            if(m == 0){
+                node = skip.get(node);
+                continue;
+            }
+            double cx = comX.get(node), cy = comY.get(node), cz = comZ.get(node);
+            double dx = cx-x, dy = cy-y, dz = cz-z;
+            if(accepts(acceptance, node, dx*dx + dy*dy + dz*dz, m, acceleration)){
+                addAttraction(cx, cy, cz, m, x, y, z, acc);
+                if(Config.QUADRUPOLE && splitRadius == 0) addQuadrupole(node, dx, dy, dz, acc);
+                node = skip.get(node);
+            } else {
+                node = firstChild.get(node);
+            }
+        }
+    }
+
+    /**
+     * checks if the area of a node is farther away from a box than the cutoff radius of the short-range force
+     * @param node the node
+     * @param minX the lower x-limit of the box, for a single point the box has no extent
+     * @param minY the lower y-limit
+     * @param minZ the lower z-limit
+     * @param maxX the upper x-limit
+     * @param maxY the upper y-limit
+     * @param maxZ the upper z-limit
+     * @return true -> the node adds nothing to the short-range force of the box
+     */
+    private boolean beyondCutoff(int node, double minX, double minY, double minZ, double maxX, double maxY, double maxZ){
+        double hw = halfWidth.get(node) + slack.get(node);
+        double hl = hw*ratioL, hh = hw*ratioH;
+        double cx = centerX.get(node), cy = centerY.get(node), cz = centerZ.get(node);
+        double dx = Math.max(0, Math.max(minX - (cx+hl), (cx-hl) - maxX));
+        double dy = Math.max(0, Math.max(minY - (cy+hw), (cy-hw) - maxY));
+        double dz = Math.max(0, Math.max(minZ - (cz+hh), (cz-hh) - maxZ));
+        return dx*dx + dy*dy + dz*dz > cutoff2;
+    }
+
+    /**
+     * adds the quadrupole part of the attraction of a node to acc, see GravityKernel.addQuadrupole
+     * @param node the node
+     * @param dx the x-component of the vector from the body to the centre of gravity of the node
+     * @param dy the y-component of the vector
+     * @param dz the z-component of the vector
+     * @param acc the accumulated attraction {x, y, z}
+     */
+    private void addQuadrupole(int node, double dx, double dy, double dz, double[] acc){
+        GravityKernel.addQuadrupole(dx, dy, dz, quadXX.get(node), quadXY.get(node), quadXZ.get(node),
+                quadYY.get(node), quadYZ.get(node), acc);
+    }
+
+    /**
+     * makes the tree ready for the walks of a force calculation: computes the links and, if needed, the quadrupole moments
+     */
+    private void prepareWalk(){
+        if(!linked) link();
+        if(Config.QUADRUPOLE && !quadrupoles) computeQuadrupoles();
+    }
+
+    /**
+     * computes the quadrupole moments of all nodes bottom-up: a leaf sums up its bodies about its centre of gravity,
+     * an inner node shifts the moments of its children to its own centre of gravity (parallel axis theorem)
+     * and adds them up. children always have a bigger index than their parents
+     */
+    private void computeQuadrupoles(){
+        for(int node=nodeCount-1; node>=0; node--){
+            double cx = comX.get(node), cy = comY.get(node), cz = comZ.get(node);
+            double xx = 0, xy = 0, xz = 0, yy = 0, yz = 0;
+            int first = firstBody.get(node);
+            if(first != INNER){
+                for(int b = first; b != NONE; b = nextBody.get(b)){
+                    double m = bodyMass.get(b);
+                    double dx = bodyX.get(b)-cx, dy = bodyY.get(b)-cy, dz = bodyZ.get(b)-cz;
+                    double d2 = dx*dx + dy*dy + dz*dz;
+                    xx += m*(3*dx*dx - d2); xy += m*3*dx*dy; xz += m*3*dx*dz;
+                    yy += m*(3*dy*dy - d2); yz += m*3*dy*dz;
+                }
+            } else {
+                for(int i=0; i<8; i++){
+                    int c = child.get(node*8+i);
+                    if(c == NONE) continue;
+                    double m = mass.get(c);
+                    double dx = comX.get(c)-cx, dy = comY.get(c)-cy, dz = comZ.get(c)-cz;
+                    double d2 = dx*dx + dy*dy + dz*dz;
+                    xx += quadXX.get(c) + m*(3*dx*dx - d2); xy += quadXY.get(c) + m*3*dx*dy;
+                    xz += quadXZ.get(c) + m*3*dx*dz;
+                    yy += quadYY.get(c) + m*(3*dy*dy - d2); yz += quadYZ.get(c) + m*3*dy*dz;
+                }
+            }
+            quadXX.set(node, xx); quadXY.set(node, xy); quadXZ.set(node, xz);
+            quadYY.set(node, yy); quadYZ.set(node, yz);
+        }
+        quadrupoles = true;
+    }
+
+    /**
+     * checks if a inner node may be used as a whole
+     * @param acceptance the criterion
+     * @param node the node
+     * @param r2 the squared distance between the body and the centre of gravity of the node
+     * @param m the mass of the node
+     * @param acceleration the acceleration of the body in the last calculation, 0 if it is unknown
+     * @return true -> the node is used as a whole
+     */
+    private boolean accepts(Acceptance acceptance, int node, double r2, double m, double acceleration){
+        double hw = halfWidth.get(node) + slack.get(node);
+        double bmax2 = 0;
+        if(acceptance.getCriterion() == AcceptanceCriterion.BMAX){
+            bmax2 = Acceptance.bmax2(hw*ratioL, hw, hw*ratioH, comX.get(node) - centerX.get(node),
+                    comY.get(node) - centerY.get(node), comZ.get(node) - centerZ.get(node));
+        }
+        return acceptance.accepts(r2, 2*hw, bmax2, m, acceleration);
+    }
+
+    /**
+     * computes the depth-first links of the nodes: the first existing child of each inner node
+     * and the node that follows the subtree of each node, that is its next existing sibling or the node after its parent.
+     * children always have a bigger index than their parents, so the links of a parent are known before its children are linked
+     */
+    private void link(){
+        if(nodeCount > 0) skip.set(0, NONE);
+        for(int node=0; node<nodeCount; node++){
+            int next = skip.get(node);
+            int base = node*8;
+            for(int i=7; i>=0; i--){
+                int c = child.get(base+i);
+                if(c != NONE){
+                    skip.set(c, next);
+                    next = c;
+                }
+            }
+            firstChild.set(node, next == skip.get(node) ? NONE : next);
+        }
+        linked = true;
+    }
+
+    /**
+     * adds m*(p-x)/|p-x|^3 to acc, where p is the position of the attracting mass,
+     * softened according to Config.SOFTENING and limited to the short-range part if a split radius is set
+     */
+    private void addAttraction(double px, double py, double pz, double m,
+                               double x, double y, double z, double[] acc){
+        double dx = px-x, dy = py-y, dz = pz-z;
+        double r2 = dx*dx + dy*dy + dz*dz;
+        if(r2 == 0) return;
+        double s = m*GravityKernel.inverseCube(r2);
+        if(splitRadius > 0) s *= GravityKernel.shortRange(r2, splitRadius);
+        acc[0] += dx*s;
+        acc[1] += dy*s;
+        acc[2] += dz*s;
+    }
+
+    /**
+     * inserts a body into the tree, starting at the root
+     * @param b the index of the body
+     */
+    private void insert(int b){
+        insert(b, 0, 0);
+    }
+
+    /**
+     * inserts a body into the subtree of a node.
+     * the mass and centre of gravity of every node on the way down is updated in place.
+     * a leaf keeps up to leafCapacity bodies, if another body arrives the leaf is split
+     * @param b the index of the body
+     * @param node the node
+     * @param depth the depth of the node
+     */
+    private void insert(int b, int node, int depth){
+        double x = bodyX.get(b), y = bodyY.get(b), z = bodyZ.get(b);
+        while(true){
+            int first = firstBody.get(node);
+            if(first != INNER){
+                if(depth >= MAX_DEPTH || leafSize(first) < leafCapacity){
+                    // the leaf has room for the body
+                    nextBody.set(b, first);
+                    firstBody.set(node, b);
+                    addToCluster(node, b);
+                    return;
+                }
+                // split the leaf: move its bodies one level down,
+                // the mass and centre of gravity of this node stay the same
+                firstBody.set(node, INNER);
+                int moved = first;
+                while(moved != NONE){
+                    int next = nextBody.get(moved);
+                    insert(moved, childFor(node, bodyX.get(moved), bodyY.get(moved), bodyZ.get(moved)), depth+1);
+                    moved = next;
+                }
+            }
+            addToCluster(node, b);
+            node = childFor(node, x, y, z);
+            depth++;
+        }
+    }
+
+    /**
+     * returns the child of a node in which a point is located, the child is created if it doesn't exist yet
+     */
+    private int childFor(int node, double x, double y, double z){
+        int oct = octantOf(node, x, y, z);
+        int c = child.get(node*8+oct);
+        if(c == NONE){
+            c = createChild(node, oct);
+        }
+        return c;
+    }
+
+    /**
+     * returns the number of bodies in the list of a leaf
+     * @param first the first body of the list
+     * @return the number of bodies
+     */
+    private int leafSize(int first){
+        int n = 0;
+        for(int b = first; b != NONE; b = nextBody.get(b)) n++;
+        return n;
+    }
+
+    /**
+     * builds the subtree of a node from a range of the sorted Morton keys.
+     * the children are created in the order of their octants, after that the mass
+     * and centre of gravity of the node is computed from its children
+     * @param node the node, all keys in the range lie in it
+     * @param from the first position in the sorted keys
+     * @param to the position after the last one
+     * @param depth the depth of the node
+     */
+    private void buildRange(int node, int from, int to, int depth){
+        if(to - from <= leafCapacity || depth >= MAX_DEPTH){
+            // a leaf, all bodies of the range are put into its list
+            double m = 0, x = 0, y = 0, z = 0;
+            int first = NONE;
+            for(int k = to-1; k >= from; k--){
+                int b = mortonKeys.getIndex(k);
+                nextBody.set(b, first);
+                first = b;
+                m += bodyMass.get(b);
+                x += bodyX.get(b)*bodyMass.get(b); y += bodyY.get(b)*bodyMass.get(b); z += bodyZ.get(b)*bodyMass.get(b);
+            }
+            firstBody.set(node, first);
+            setCluster(node, m, x, y, z);
+            return;
+        }
+        firstBody.set(node, INNER);
+        int start = from;
+        while(start < to){
+            int oct = MortonKeys.octant(mortonKeys.getKey(start), depth);
+            int end = mortonKeys.endOfOctant(start, to, depth, oct);
+            buildRange(createChild(node, oct), start, end, depth+1);
+            start = end;
+        }
+        // all children are finished, so we can compute the cluster of this node
+        mergeChildren(node);
+    }
+
+    /**
+     * builds the tree from the sorted Morton keys in parallel.
+     * the key ranges are split by octant until they are not bigger than Config.PARALLEL_BUILD_CUTOFF,
+     * the subtrees of these ranges are built as tasks on the ForkJoinPool of Parallel in helper trees.
+     * after that the helper trees are copied into this tree and the clusters of the upper nodes are merged
+     * @param root the root of the tree
+     */
+    private void buildParallel(int root){
+        topNodeCount = 0;
+        subtreeTasks.clear();
+        splitRange(root, 0, bodyCount, 0);
+        Parallel.forRange(subtreeTasks.size(), 1, (from, to) -> {
+            for(int i=from; i<to; i++){
+                subtreeTasks.get(i).build();
+            }
+        });
+        // copy the subtrees behind the upper nodes, each subtree gets its own range of indices
+        int offset = nodeCount;
+        for(SubtreeTask task : subtreeTasks){
+            task.offset = offset;
+            offset += task.tree.nodeCount - 1;
+        }
+        if(offset > mass.length()){
+            allocateNodes(Math.max(offset, 2*mass.length()));
+        }
+        Parallel.forRange(subtreeTasks.size(), 1, (from, to) -> {
+            for(int i=from; i<to; i++){
+                SubtreeTask task = subtreeTasks.get(i);
+                copySubtree(task.tree, task.node, task.offset);
+            }
+        });
+        nodeCount = offset;
+        // merge the clusters up the tree, children were created after their parents
+        for(int i=topNodeCount-1; i>=0; i--){
+            mergeChildren(topNodes[i]);
+        }
+    }
+
+    /**
+     * splits a range of the sorted keys by octant, until the ranges are small enough to be built by one task
+     * @param node the node, all keys in the range lie in it
+     * @param from the first position in the sorted keys
+     * @param to the position after the last one
+     * @param depth the depth of the node
+     */
+    private void splitRange(int node, int from, int to, int depth){
+        if(to - from <= Config.PARALLEL_BUILD_CUTOFF || depth >= MAX_DEPTH){
+            int i = subtreeTasks.size();
+            if(i == subtrees.size()){
+                subtrees.add(new ArrayOctree(this));
+            }
+            subtreeTasks.add(new SubtreeTask(subtrees.get(i), node, from, to, depth));
+            return;
+        }
+        firstBody.set(node, INNER);
+        if(topNodeCount == topNodes.length){
+            topNodes = Arrays.copyOf(topNodes, 2*topNodeCount);
+        }
+        topNodes[topNodeCount++] = node;
+        int start = from;
+        while(start < to){
+            int oct = MortonKeys.octant(mortonKeys.getKey(start), depth);
+            int end = mortonKeys.endOfOctant(start, to, depth, oct);
+            splitRange(createChild(node, oct), start, end, depth+1);
+            start = end;
+        }
+    }
+
+    /**
+     * copies the nodes of a helper tree into this tree.
+     * the root of the helper tree replaces the given node, the other nodes are placed from offset on
+     * @param tree the helper tree
+     * @param node the node that is replaced by the root of the helper tree
+     * @param offset the index of the first copied node, except the root
+     */
+    private void copySubtree(ArrayOctree tree, int node, int offset){
+        copyNode(tree, 0, node, offset);
+        int n = tree.nodeCount - 1;
+        for(int h=1; h<=n; h++){
+            copyNode(tree, h, offset + h - 1, offset);
+        }
+    }
+
+    /**
+     * copies a node of a helper tree into this tree, the indices of the children are moved by offset
+     */
+    private void copyNode(ArrayOctree tree, int h, int node, int offset){
+        for(int i=0; i<8; i++){
+            int c = tree.child.get(h*8+i);
+            child.set(node*8+i, c == NONE ? NONE : offset + c - 1);
+        }
+        firstBody.set(node, tree.firstBody.get(h));
+        mass.set(node, tree.mass.get(h));
+        comX.set(node, tree.comX.get(h)); comY.set(node, tree.comY.get(h)); comZ.set(node, tree.comZ.get(h));
+        centerX.set(node, tree.centerX.get(h)); centerY.set(node, tree.centerY.get(h)); centerZ.set(node, tree.centerZ.get(h));
+        halfWidth.set(node, tree.halfWidth.get(h));
+        slack.set(node, 0);
+    }
+
+    /**
+     * builds the subtree of a key range in a helper tree
+     */
+    private class SubtreeTask {
+        private final ArrayOctree tree;
+        private final int node, from, to, depth;
+        private int offset;
+
+        SubtreeTask(ArrayOctree tree, int node, int from, int to, int depth){
+            this.tree = tree;
+            this.node = node;
+            this.from = from;
+            this.to = to;
+            this.depth = depth;
+        }
+
+        /**
+         * builds the subtree, each task touches only the bodies of its own range
+         */
+        void build() {
+            // the helper tree works on the bodies of this tree, in the current area
+            tree.area = area;
+            tree.ratioL = ratioL; tree.ratioH = ratioH;
+            tree.bodies = bodies;
+            tree.nextBody = nextBody;
+            tree.bodyX = bodyX; tree.bodyY = bodyY; tree.bodyZ = bodyZ;
+            tree.bodyMass = bodyMass;
+            tree.nodeCount = 0;
+            tree.newNode(centerX.get(node), centerY.get(node), centerZ.get(node), halfWidth.get(node));
+            tree.buildRange(0, from, to, depth);
+        }
+    }
+
+    /**
+     * computes the mass, centre of gravity and slack of a node from its children.
+     * the cells of the children lie in the cell of the node, so their bodies stick out of it at most by their slack
+     */
+    private void mergeChildren(int node){
+        double m = 0, x = 0, y = 0, z = 0, s = 0;
+        for(int i=0; i<8; i++){
+            int c = child.get(node*8+i);
+            if(c != NONE){
+                m += mass.get(c);
+                x += comX.get(c)*mass.get(c); y += comY.get(c)*mass.get(c); z += comZ.get(c)*mass.get(c);
+                s = Math.max(s, slack.get(c));
+            }
+        }
+        setCluster(node, m, x, y, z);
+        slack.set(node, s);
+    }
+
+    /**
+     * sets the mass and centre of gravity of a node from the sum of the masses
+     * and the sum of the mass weighted positions
+     */
+    private void setCluster(int node, double m, double x, double y, double z){
+        quadrupoles = false;
+        mass.set(node, m);
+        if(m == 0){
+            // an empty node, the centre of gravity is never used
+            comX.set(node, centerX.get(node)); comY.set(node, centerY.get(node)); comZ.set(node, centerZ.get(node));
+            return;
+        }
+        comX.set(node, x/m); comY.set(node, y/m); comZ.set(node, z/m);
+    }
+
+    /**
+     * computes the mass, centre of gravity and slack of a leaf from its bodies
+     */
+    private void computeLeaf(int node){
+        double m = 0, x = 0, y = 0, z = 0, s = 0;
+        double hw = halfWidth.get(node);
+        double cx = centerX.get(node), cy = centerY.get(node), cz = centerZ.get(node);
+        for(int b = firstBody.get(node); b >= 0; b = nextBody.get(b)){
+            double bx = bodyX.get(b), by = bodyY.get(b), bz = bodyZ.get(b);
+            m += bodyMass.get(b);
+            x += bx*bodyMass.get(b); y += by*bodyMass.get(b); z += bz*bodyMass.get(b);
+            // the distance outside of the cell on each axis, scaled like halfWidth
+            s = Math.max(s, Math.max((Math.abs(bx-cx) - hw*ratioL)/ratioL,
+                    Math.max(Math.abs(by-cy) - hw, (Math.abs(bz-cz) - hw*ratioH)/ratioH)));
+        }
+        setCluster(node, m, x, y, z);
+        slack.set(node, s);
+    }
+
+    /**
+     * checks if a point lies in the area of a node, like Boundary3D.contains the upper limits are not included
+     * @param scale the factor by which the area is grown around its centre
+     */
+    private boolean leafContains(int node, double x, double y, double z, double scale){
+        double hw = halfWidth.get(node)*scale;
+        double hl = hw*ratioL, hh = hw*ratioH;
+        return centerX.get(node) - hl <= x && x < centerX.get(node) + hl &&
+                centerY.get(node) - hw <= y && y < centerY.get(node) + hw &&
+                centerZ.get(node) - hh <= z && z < centerZ.get(node) + hh;
+    }
+
+    /**
+     * adds the mass of a body to the mass and centre of gravity of a node
+     */
+    private void addToCluster(int node, int b){
+        quadrupoles = false;
+        double m = mass.get(node) + bodyMass.get(b);
+        comX.set(node, (comX.get(node)*mass.get(node) + bodyX.get(b)*bodyMass.get(b))/m);
+        comY.set(node, (comY.get(node)*mass.get(node) + bodyY.get(b)*bodyMass.get(b))/m);
+        comZ.set(node, (comZ.get(node)*mass.get(node) + bodyZ.get(b)*bodyMass.get(b))/m);
+        mass.set(node, m);
+    }
+
+    /**
+     * returns the octant of a node in which a point is located, see Boundary3D.whichOctant
+     */
+    private int octantOf(int node, double x, double y, double z){
+        int oct = 0;
+        if(x >= centerX.get(node)) oct |= 1;
+        if(z < centerZ.get(node)) oct |= 2;
+        if(y >= centerY.get(node)) oct |= 4;
+        return oct;
+    }
+
+    /**
+     * creates an empty leaf for an octant of a node
+     * @return the index of the new node
+     */
+    private int createChild(int parent, int oct){
+        double q = halfWidth.get(parent)/2;
+        double cx = centerX.get(parent) + ((oct & 1) != 0 ? q*ratioL : -q*ratioL);
+        double cy = centerY.get(parent) + ((oct & 4) != 0 ? q : -q);
+        double cz = centerZ.get(parent) + ((oct & 2) != 0 ? -q*ratioH : q*ratioH);
+        int c = newNode(cx, cy, cz, q);
+        child.set(parent*8+oct, c);
+        return c;
+    }
+
+    /**
+     * appends an empty leaf to the node arrays
+     * @return the index of the new node
+     */
+    private int newNode(double cx, double cy, double cz, double hw){
+        if(nodeCount == mass.length()){
+            allocateNodes(2*nodeCount);
+        }
+        int node = nodeCount++;
+        linked = false;
+        quadrupoles = false;
+        child.fill(node*8, node*8+8, NONE);
+        firstBody.set(node, NONE);
+        mass.set(node, 0);
+        comX.set(node, 0); comY.set(node, 0); comZ.set(node, 0);
+        centerX.set(node, cx); centerY.set(node, cy); centerZ.set(node, cz);
+        halfWidth.set(node, hw);
+        slack.set(node, 0);
+        return node;
+    }
+
+    /**
+     * appends a body to the body arrays
+     * @param body the body
+     * @return the index of the body
+     */
+    private int newBody(CelestialBody body){
+        int b = newBody(body, body.getX(), body.getY(), body.getZ(), body.getMass());
+        storeIndex.set(b, NONE);
+        return b;
+    }
+
+    /**
+     * appends a body of a store to the body arrays
+     * @param store the store
+     * @param i the index of the body in the store
+     * @return the index of the body in the tree
+     */
+    private int newBody(BodyStore store, int i){
+        int b = newBody(store.getBody(i), store.getX(i), store.getY(i), store.getZ(i), store.getMass(i));
+        storeIndex.set(b, i);
+        return b;
+    }
+
+    private int newBody(CelestialBody body, double x, double y, double z, double m){
+        if(bodyCount == bodies.length){
+            allocateBodies(2*bodyCount);
+        }
+        int b = bodyCount++;
+        bodies[b] = body;
+        nextBody.set(b, NONE);
+        bodyX.set(b, x); bodyY.set(b, y); bodyZ.set(b, z);
+        bodyMass.set(b, m);
+        return b;
+    }
+
+    /**
+     * resizes the node arrays, the existing nodes are kept
+     */
+    private void allocateNodes(int capacity){
+        if(child == null){
+            child = IntArray.allocate(8L*capacity);
+            firstBody = IntArray.allocate(capacity);
+            mass = DoubleArray.allocate(capacity);
+            comX = DoubleArray.allocate(capacity); comY = DoubleArray.allocate(capacity); comZ = DoubleArray.allocate(capacity);
+            centerX = DoubleArray.allocate(capacity); centerY = DoubleArray.allocate(capacity); centerZ = DoubleArray.allocate(capacity);
+            halfWidth = DoubleArray.allocate(capacity);
+            slack = DoubleArray.allocate(capacity);
+            firstChild = IntArray.allocate(capacity);
+            skip = IntArray.allocate(capacity);
+            if(Config.QUADRUPOLE){
+                quadXX = DoubleArray.allocate(capacity); quadXY = DoubleArray.allocate(capacity);
+                quadXZ = DoubleArray.allocate(capacity); quadYY = DoubleArray.allocate(capacity);
+                quadYZ = DoubleArray.allocate(capacity);
+            }
+            return;
+        }
+        child = child.resize(8L*capacity);
+        firstBody = firstBody.resize(capacity);
+        mass = mass.resize(capacity);
+        comX = comX.resize(capacity); comY = comY.resize(capacity); comZ = comZ.resize(capacity);
+        centerX = centerX.resize(capacity); centerY = centerY.resize(capacity); centerZ = centerZ.resize(capacity);
+        halfWidth = halfWidth.resize(capacity);
+        slack = slack.resize(capacity);
+        firstChild = firstChild.resize(capacity);
+        skip = skip.resize(capacity);
+        if(Config.QUADRUPOLE){
+            quadXX = quadXX.resize(capacity); quadXY = quadXY.resize(capacity);
+            quadXZ = quadXZ.resize(capacity); quadYY = quadYY.resize(capacity);
+            quadYZ = quadYZ.resize(capacity);
+        }
+    }
+
+    /**
+     * resizes the body arrays, the existing bodies are kept
+     */
+    private void allocateBodies(int capacity){
+        if(bodies == null){
+            bodies = new CelestialBody[capacity];
+            nextBody = IntArray.allocate(capacity);
+            storeIndex = IntArray.allocate(capacity);
+            bodyX = DoubleArray.allocate(capacity); bodyY = DoubleArray.allocate(capacity); bodyZ = DoubleArray.allocate(capacity);
+            bodyMass = DoubleArray.allocate(capacity);
+            return;
+        }
+        bodies = Arrays.copyOf(bodies, capacity);
+        nextBody = nextBody.resize(capacity);
+        storeIndex = storeIndex.resize(capacity);
+        bodyX = bodyX.resize(capacity); bodyY = bodyY.resize(capacity); bodyZ = bodyZ.resize(capacity);
+        bodyMass = bodyMass.resize(capacity);
+    }
+}
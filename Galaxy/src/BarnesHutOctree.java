@@ -1,4 +1,7 @@
-public interface BarnesHutOctree {
+/**
+ * a BarnesHut-Octree, the force on a body is calculated from the bodies nearby and the clusters of the distant bodies
+ */
+public interface BarnesHutOctree extends ForceSolver {
     /**
      * tries to add a body to the octree
      * returns true if the operation was successful
@@ -8,9 +11,51 @@ public interface BarnesHutOctree {
      */
     boolean add(CelestialBody body);
 
+    /**
+     * tries to add all bodies of the store that aren't excluded yet to the octree.
+     * bodies that can't be added are excluded in the store
+     * @param store the store with the bodies
+     * @return the number of bodies that were excluded by this call
+     */
+    default int addAll(BodyStore store){
+        int newlyExcluded = 0;
+        for(int i=0; i<store.size(); i++){
+            if(!store.isExcluded(i) && !add(store.getBody(i))){
+                store.exclude(i);
+                newlyExcluded++;
+            }
+        }
+        return newlyExcluded;
+    }
+
+    /**
+     * updates the octree to the current positions of the bodies in the store
+     * and returns the number of newly excluded bodies.
+     * by default the octree is cleared and all bodies are added again
+     * @param store the store with the bodies
+     * @return the number of bodies that were excluded by this call
+     */
+    @Override
+    default int update(BodyStore store){
+        clear();
+        return addAll(store);
+    }
+
+    /**
+     * removes all bodies from the octree, so it can be reused for the next iteration
+     */
+    void clear();
+
+    /**
+     * sets the criterion that decides if a node is used as a whole, it is used from the next force calculation on
+     * @param acceptance the criterion and its theta
+     */
+    void setAcceptance(Acceptance acceptance);
+
     /**
      * draws the boundary of each leaf node
      */
+    @Override
     void show();
 
     /**
@@ -20,5 +65,40 @@ public interface BarnesHutOctree {
      */
     Vector3[] calculateForce(CelestialBody[] bodyList);
 
+    /**
+     * calculates the force for each body in the store, the index in the result is the index in the store.
+     * excluded bodies get a zero force
+     * @param store the store with the bodies
+     * @return a vector array with the calculated forces
+     */
+    @Override
+    default Vector3[] calculateForce(BodyStore store){
+        Vector3[] forceList = calculateForce(store.getBodies());
+        for(int i=0; i<forceList.length; i++){
+            if(store.isExcluded(i)) forceList[i] = new Vector3(0,0,0);
+        }
+        return forceList;
+    }
+
+    /**
+     * calculates the force for some bodies of the store, e.g. the bodies whose time step ends.
+     * excluded bodies get a zero force
+     * @param store the store with the bodies
+     * @param indices the indices of the bodies in the store
+     * @param n the number of indices
+     * @return a vector array with the calculated forces, the force on the body indices[k] has the index k
+     */
+    @Override
+    default Vector3[] calculateForce(BodyStore store, int[] indices, int n){
+        CelestialBody[] bodyList = new CelestialBody[n];
+        for(int k=0; k<n; k++){
+            bodyList[k] = store.getBody(indices[k]);
+        }
+        Vector3[] forceList = calculateForce(bodyList);
+        for(int k=0; k<n; k++){
+            if(store.isExcluded(indices[k])) forceList[k] = new Vector3(0,0,0);
+        }
+        return forceList;
+    }
 
 }
@@ -0,0 +1,127 @@
+/**
+ * a leapfrog integration (kick-drift-kick) where each body has its own time step.
+ * the time steps are powers of two smaller than the step of the simulation: a body on level l moves with dt/2^l.
+ * the level of a body is chosen by its acceleration a: the step must not be bigger than
+ * Config.TIMESTEP_ETA*sqrt(Config.TIMESTEP_LENGTH/a), the deepest level is Config.MAX_TIMESTEP_LEVEL by default.
+ * with the deepest level 0 it is the same as the LeapfrogIntegrator.
+ *
+ * one call of step() is split into substeps that last until the step of the next body ends.
+ * all bodies drift in each substep, but only the bodies whose step ends get a new force from the solver,
+ * so bodies in slow orbits need much less force calculations than the bodies near the black holes.
+ * a body can move to a deeper level whenever its step ends, also in the middle of step(),
+ * but never below the deepest level. a bigger step is only taken when the time is a multiple of it.
+ * at the end of step() all bodies are synchronised again
+ */
+public class BlockTimestepIntegrator implements Integrator {
+
+    private BodyStore forceStore;       // the store the forces were calculated for
+    private int forceOrder;             // the reorder count of the store when the forces were calculated
+    private double[] fx, fy, fz;        // the last force on each body
+    private int[] level;                // the time step of each body is dt/2^level
+    private int[] active;               // the indices of the bodies whose step ends in the current substep
+    private final int maxLevel;         // the deepest level
+
+    /**
+     * creates the integration with the deepest level Config.MAX_TIMESTEP_LEVEL
+     */
+    public BlockTimestepIntegrator(){
+        this(Config.MAX_TIMESTEP_LEVEL);
+    }
+
+    /**
+     * creates the integration with a given deepest level
+     * @param maxLevel the deepest level, the smallest time step is dt/2^maxLevel, between 0 and 30
+     */
+    public BlockTimestepIntegrator(int maxLevel){
+        if(maxLevel < 0 || maxLevel > 30) throw new IllegalArgumentException("the deepest level must be between 0 and 30: " + maxLevel);
+        this.maxLevel = maxLevel;
+    }
+
+    @Override
+    public int step(BodyStore store, ForceSolver solver, double dt) {
+        int n = store.size();
+        int newlyExcluded = 0;
+        // the forces and levels of the last step follow the bodies if the store was reordered since
+        if(forceStore == store && forceOrder != store.getReorderCount()){
+            if(forceOrder + 1 == store.getReorderCount() && level.length == n){
+                store.permute(fx); store.permute(fy); store.permute(fz);
+                store.permute(level);
+            } else forceStore = null;
+        }
+        // in the first step there are no forces of the last step
+        if(forceStore != store || level.length != n){
+            fx = new double[n]; fy = new double[n]; fz = new double[n];
+            level = new int[n];
+            active = new int[n];
+            newlyExcluded += solver.update(store);
+            solver.calculateForce(store, fx, fy, fz);
+            for(int i=0; i<n; i++){
+                level[i] = levelOf(store, i, dt);
+            }
+            forceStore = store;
+        }
+        forceOrder = store.getReorderCount();
+        // the time is counted in ticks of the deepest level, a body on level l ends its step every ticks>>l ticks
+        int ticks = 1 << maxLevel;
+        int t = 0;
+        while(t < ticks){
+            // the first half kick of the bodies whose step starts now
+            for(int i=0; i<n; i++){
+                if(t % (ticks >> level[i]) == 0){
+                    store.kick(i, fx[i], fy[i], fz[i], dt/(2 << level[i]));
+                }
+            }
+            // the substep lasts until the step of the next body ends
+            int next = ticks;
+            for(int i=0; i<n; i++){
+                if(store.isExcluded(i)) continue;
+                int stride = ticks >> level[i];
+                next = Math.min(next, t - t % stride + stride);
+            }
+            double h = dt*(next - t)/ticks;
+            for(int i=0; i<n; i++){
+                store.drift(i, h);
+            }
+            t = next;
+            // the second half kick of the bodies whose step ends now, with the force at their new position
+            int count = 0;
+            for(int i=0; i<n; i++){
+                if(!store.isExcluded(i) && t % (ticks >> level[i]) == 0){
+                    active[count++] = i;
+                }
+            }
+            if(count == 0) continue;
+            newlyExcluded += solver.update(store);
+            solver.calculateForce(store, active, count, fx, fy, fz);
+            for(int k=0; k<count; k++){
+                int i = active[k];
+                store.kick(i, fx[i], fy[i], fz[i], dt/(2 << level[i]));
+                // a body can always get a smaller step, but a bigger one only if the time is a multiple of it
+                int l = levelOf(store, i, dt);
+                while(l < level[i] && t % (ticks >> l) != 0){
+                    l++;
+                }
+                level[i] = l;
+            }
+        }
+        return newlyExcluded;
+    }
+
+    /**
+     * returns the smallest level whose time step isn't bigger than the step allowed by the acceleration of the body
+     * @param store the store with the bodies
+     * @param i the index of the body
+     * @param dt the time step of the simulation
+     * @return the level between 0 and maxLevel
+     */
+    private int levelOf(BodyStore store, int i, double dt){
+        double a = Math.sqrt(fx[i]*fx[i] + fy[i]*fy[i] + fz[i]*fz[i])/store.getMass(i);
+        if(a == 0) return 0;
+        double allowed = Config.TIMESTEP_ETA*Math.sqrt(Config.TIMESTEP_LENGTH/a);
+        int l = 0;
+        while(l < maxLevel && dt/(1 << l) > allowed){
+            l++;
+        }
+        return l;
+    }
+}
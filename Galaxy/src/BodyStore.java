@@ -0,0 +1,364 @@
+import java.util.Arrays;
+
+/**
+ * stores the state of many bodies in primitive arrays, one array per component (structure of arrays).
+ * a body is addressed by its index, a CelestialBody is only a view on one index of a store.
+ * The octree, the movement and the drawing of the simulation work directly on the indices,
+ * so a simulation step doesn't need to create any objects for the bodies.
+ * if Config.OFF_HEAP is set the arrays are kept outside of the heap, only the views stay on the heap.
+ * the bodies can be reordered, e.g. into the Morton order of their positions, so bodies that are near each other
+ * in space are near each other in memory as well. each body keeps its id, the index it got when it was added
+ */
+public class BodyStore {
+
+    private int size;
+    private DoubleArray x, y, z;        // position of the center
+    private DoubleArray vx, vy, vz;     // current movement
+    private DoubleArray mass, radius;
+    private boolean[] excluded;
+    private CelestialBody[] bodies;     // the views on the bodies
+    private int excludedCount;
+
+    // the id of each body and the index of each id, the ids don't change when the bodies are reordered
+    private int[] id, indexOfId;
+    // the number of reorders so far and the old index of each body in the last reorder, see permute()
+    private int reorderCount;
+    private int[] lastOrder = new int[0];
+    // used for the Morton order and as the target of the permutation of the arrays
+    private MortonKeys mortonKeys;
+    private DoubleArray scratch;
+
+    // the number of bodies a thread permutes at least
+    private static final int PARALLEL_GRAIN = 4096;
+
+    /**
+     * creates an empty store with enough memory for the given number of bodies
+     * @param capacity the expected number of bodies
+     */
+    public BodyStore(int capacity){
+        allocate(Math.max(capacity, 1));
+    }
+
+    /**
+     * creates a store that contains the given bodies in the same order,
+     * the bodies become views on this store
+     * @param bodyList the bodies
+     */
+    public BodyStore(CelestialBody[] bodyList){
+        this(bodyList.length);
+        for(CelestialBody body : bodyList){
+            add(body);
+        }
+    }
+
+    /**
+     * copies the state of a body into this store and makes the body a view on it
+     * @param body the body
+     * @return the index of the body in this store
+     */
+    public int add(CelestialBody body){
+        return add(body, body.getMass(), body.getRadius(), body.getPosition(), body.getCurrentMovement());
+    }
+
+    /**
+     * adds a body with the given state and makes the body a view on it
+     * @param body the view on the new body
+     * @param mass the mass
+     * @param radius the radius
+     * @param position the position of the center
+     * @param movement the current movement
+     * @return the index of the body
+     */
+    int add(CelestialBody body, double mass, double radius, Vector3 position, Vector3 movement){
+        if(size == this.mass.length()){
+            allocate(2*size);
+        }
+        int i = size++;
+        this.mass.set(i, mass);
+        this.radius.set(i, radius);
+        setPosition(i, position.getX(), position.getY(), position.getZ());
+        setVelocity(i, movement.getX(), movement.getY(), movement.getZ());
+        excluded[i] = false;
+        bodies[i] = body;
+        id[i] = i;
+        indexOfId[i] = i;
+        body.bind(this, i);
+        return i;
+    }
+
+    /**
+     * returns the id of a body, the index it got when it was added to the store
+     * @param i the index of the body
+     * @return the id
+     */
+    public int getId(int i){
+        return id[i];
+    }
+
+    /**
+     * returns the current index of a body
+     * @param id the id of the body
+     * @return the index
+     */
+    public int indexOf(int id){
+        return indexOfId[id];
+    }
+
+    /**
+     * sorts the bodies by the Morton keys of their positions, see MortonKeys
+     * @param area the area the keys are relative to, bodies outside of it get the key of the nearest border
+     */
+    public void sortByMortonKeys(Boundary3D area){
+        if(mortonKeys == null) mortonKeys = new MortonKeys();
+        mortonKeys.compute(area, x, y, z, size);
+        mortonKeys.sort();
+        int[] order = new int[size];
+        for(int k=0; k<size; k++){
+            order[k] = mortonKeys.getIndex(k);
+        }
+        reorder(order);
+    }
+
+    /**
+     * reorders the bodies, the views are bound to their new index.
+     * per-body data outside of the store has to be brought into the new order with permute(),
+     * its owner can detect a reorder through getReorderCount()
+     * @param order the old index of the body at each new index, a permutation of [0, size())
+     */
+    public void reorder(int[] order){
+        lastOrder = Arrays.copyOf(order, size);
+        x = permute(x); y = permute(y); z = permute(z);
+        vx = permute(vx); vy = permute(vy); vz = permute(vz);
+        mass = permute(mass);
+        radius = permute(radius);
+        permute(excluded);
+        permute(bodies);
+        permute(id);
+        for(int i=0; i<size; i++){
+            indexOfId[id[i]] = i;
+            bodies[i].bind(this, i);
+        }
+        reorderCount++;
+    }
+
+    /**
+     * returns the number of reorders so far
+     * @return the number of reorders
+     */
+    public int getReorderCount(){
+        return reorderCount;
+    }
+
+    /**
+     * brings per-body data that was in the order before the last reorder into the current order
+     * @param data the data at the index of each body, at least size() entries
+     */
+    public void permute(double[] data){
+        double[] old = Arrays.copyOf(data, size);
+        for(int i=0; i<size; i++){
+            data[i] = old[lastOrder[i]];
+        }
+    }
+
+    /**
+     * brings per-body data that was in the order before the last reorder into the current order
+     * @param data the data at the index of each body, at least size() entries
+     */
+    public void permute(int[] data){
+        int[] old = Arrays.copyOf(data, size);
+        for(int i=0; i<size; i++){
+            data[i] = old[lastOrder[i]];
+        }
+    }
+
+    /**
+     * brings per-body data that was in the order before the last reorder into the current order
+     * @param data the data at the index of each body, at least size() entries
+     */
+    public void permute(boolean[] data){
+        boolean[] old = Arrays.copyOf(data, size);
+        for(int i=0; i<size; i++){
+            data[i] = old[lastOrder[i]];
+        }
+    }
+
+    /**
+     * brings per-body data that was in the order before the last reorder into the current order
+     * @param data the data at the index of each body, at least size() entries
+     */
+    public <T> void permute(T[] data){
+        T[] old = Arrays.copyOf(data, size);
+        for(int i=0; i<size; i++){
+            data[i] = old[lastOrder[i]];
+        }
+    }
+
+    /**
+     * permutes a component into the scratch array, the scratch array takes the place of the component
+     * @return the permuted component, the old one is the new scratch array
+     */
+    private DoubleArray permute(DoubleArray data){
+        if(scratch == null || scratch.length() != data.length()){
+            if(scratch != null) scratch.free();
+            scratch = DoubleArray.allocate(data.length());
+        }
+        DoubleArray target = scratch;
+        Parallel.forRange(size, PARALLEL_GRAIN, (from, to) -> {
+            for(int i=from; i<to; i++){
+                target.set(i, data.get(lastOrder[i]));
+            }
+        });
+        scratch = data;
+        return target;
+    }
+
+    /**
+     * returns the number of bodies in this store
+     * @return the number of bodies
+     */
+    public int size(){
+        return size;
+    }
+
+    /**
+     * returns the number of bodies that are not excluded
+     * @return the number of remaining bodies
+     */
+    public int getRemaining(){
+        return size - excludedCount;
+    }
+
+    /**
+     * returns the view on a body
+     * @param i the index of the body
+     * @return the body
+     */
+    public CelestialBody getBody(int i){
+        return bodies[i];
+    }
+
+    /**
+     * returns the views on all bodies, the index in the array is the index in the store
+     * @return a new array with the bodies
+     */
+    public CelestialBody[] getBodies(){
+        return Arrays.copyOf(bodies, size);
+    }
+
+    public double getX(int i){ return x.get(i); }
+
+    public double getY(int i){ return y.get(i); }
+
+    public double getZ(int i){ return z.get(i); }
+
+    public double getVX(int i){ return vx.get(i); }
+
+    public double getVY(int i){ return vy.get(i); }
+
+    public double getVZ(int i){ return vz.get(i); }
+
+    public double getMass(int i){ return mass.get(i); }
+
+    public double getRadius(int i){ return radius.get(i); }
+
+    /**
+     * sets the position of a body
+     * @param i the index of the body
+     */
+    public void setPosition(int i, double x, double y, double z){
+        this.x.set(i, x);
+        this.y.set(i, y);
+        this.z.set(i, z);
+    }
+
+    /**
+     * sets the current movement of a body
+     * @param i the index of the body
+     */
+    public void setVelocity(int i, double vx, double vy, double vz){
+        this.vx.set(i, vx);
+        this.vy.set(i, vy);
+        this.vz.set(i, vz);
+    }
+
+    /**
+     * checks if a body is excluded from the simulation
+     * @param i the index of the body
+     * @return true -> the body is excluded
+     */
+    public boolean isExcluded(int i){
+        return excluded[i];
+    }
+
+    /**
+     * excludes a body from the simulation, e.g. because it left the observed area
+     * @param i the index of the body
+     */
+    public void exclude(int i){
+        if(!excluded[i]){
+            excluded[i] = true;
+            excludedCount++;
+        }
+    }
+
+    /**
+     * moves a body according to the force exerted on it for one second:
+     * the force changes the current movement and the body moves by the new movement
+     * @param i the index of the body
+     * @param fx the x-component of the force
+     * @param fy the y-component of the force
+     * @param fz the z-component of the force
+     */
+    public void move(int i, double fx, double fy, double fz){
+        double m = mass.get(i);
+        double nvx = vx.get(i) + fx/m, nvy = vy.get(i) + fy/m, nvz = vz.get(i) + fz/m;
+        setVelocity(i, nvx, nvy, nvz);
+        setPosition(i, x.get(i) + nvx, y.get(i) + nvy, z.get(i) + nvz);
+    }
+
+    /**
+     * changes the current movement of a body according to the force exerted on it for the time dt
+     * @param i the index of the body
+     * @param fx the x-component of the force
+     * @param fy the y-component of the force
+     * @param fz the z-component of the force
+     * @param dt the time in seconds
+     */
+    public void kick(int i, double fx, double fy, double fz, double dt){
+        double m = mass.get(i);
+        setVelocity(i, vx.get(i) + fx/m*dt, vy.get(i) + fy/m*dt, vz.get(i) + fz/m*dt);
+    }
+
+    /**
+     * moves a body by its current movement for the time dt
+     * @param i the index of the body
+     * @param dt the time in seconds
+     */
+    public void drift(int i, double dt){
+        setPosition(i, x.get(i) + vx.get(i)*dt, y.get(i) + vy.get(i)*dt, z.get(i) + vz.get(i)*dt);
+    }
+
+    private void allocate(int capacity){
+        if(mass == null){
+            x = DoubleArray.allocate(capacity); y = DoubleArray.allocate(capacity); z = DoubleArray.allocate(capacity);
+            vx = DoubleArray.allocate(capacity); vy = DoubleArray.allocate(capacity); vz = DoubleArray.allocate(capacity);
+            mass = DoubleArray.allocate(capacity);
+            radius = DoubleArray.allocate(capacity);
+            excluded = new boolean[capacity];
+            bodies = new CelestialBody[capacity];
+            id = new int[capacity];
+            indexOfId = new int[capacity];
+            return;
+        }
+        x = x.resize(capacity); y = y.resize(capacity); z = z.resize(capacity);
+        vx = vx.resize(capacity); vy = vy.resize(capacity); vz = vz.resize(capacity);
+        mass = mass.resize(capacity);
+        radius = radius.resize(capacity);
+        excluded = Arrays.copyOf(excluded, capacity);
+        bodies = Arrays.copyOf(bodies, capacity);
+        id = Arrays.copyOf(id, capacity);
+        indexOfId = Arrays.copyOf(indexOfId, capacity);
+        if(scratch != null) scratch.free();
+        scratch = null;
+    }
+}
@@ -75,6 +75,36 @@ public class Boundary3D {
      */
     public double getW() {return w;}
 
+    /**
+     * returns the length of this cuboid
+     * @return the length as double
+     */
+    public double getL() {return l;}
+
+    /**
+     * returns the height of this cuboid
+     * @return the height as double
+     */
+    public double getH() {return h;}
+
+    /**
+     * returns the x-coordinate of the center of this cuboid
+     * @return the x-coordinate
+     */
+    public double getX() {return x;}
+
+    /**
+     * returns the y-coordinate of the center of this cuboid
+     * @return the y-coordinate
+     */
+    public double getY() {return y;}
+
+    /**
+     * returns the z-coordinate of the center of this cuboid
+     * @return the z-coordinate
+     */
+    public double getZ() {return z;}
+
 
     /**
      * checks if a given point is located in the cuboid and returns true or false
@@ -83,7 +113,18 @@ public class Boundary3D {
      * @return true -> point is in the cuboid
      */
     public boolean contains(Vector3 point){
-        double pX=point.getX(), pY=point.getY(), pZ=point.getZ();
+        return contains(point.getX(), point.getY(), point.getZ());
+    }
+
+    /**
+     * checks if a given point is located in the cuboid and returns true or false
+     * attention points that are located exactly on the upper limit (right, back, top) of the cuboid are not included
+     * @param pX the x-coordinate of the point
+     * @param pY the y-coordinate of the point
+     * @param pZ the z-coordinate of the point
+     * @return true -> point is in the cuboid
+     */
+    public boolean contains(double pX, double pY, double pZ){
 
         return (x - l / 2) <= pX && pX < (x + l / 2) &&
                 (y - w / 2) <= pY && pY < (y + w / 2) &&
@@ -98,7 +139,7 @@ public class Boundary3D {
      * @return true -> body is in the cuboid
      */
     public boolean contains(CelestialBody body){
-        return contains(body.getPosition());
+        return contains(body.getX(), body.getY(), body.getZ());
     }
 
     /**
@@ -1,45 +1,62 @@
 import java.awt.*;
 
 // This class represents celestial bodies like stars, planets, asteroids, etc..
+// The mass, radius, position and movement are kept in a BodyStore, a body is only a view on one index of it.
+// Until the body is added to a store it keeps its state in its own fields.
 public class CelestialBody implements GeneralBody{
 
 
     private final String name;
-    private final double mass;
-    private final double radius;
-    private Vector3 position; // position of the center.
-    private Vector3 currentMovement;
     private final Color color; // for drawing the body.
+    private BodyStore store; // holds the state of this body, null until the body is added to a store.
+    private int index; // index of this body in the store.
+    // the state of the body as long as it is not in a store.
+    private double mass, radius, x, y, z, vx, vy, vz;
 
 
     public CelestialBody(String name, double mass, double radius, Vector3 position,
                          Vector3 currentMovement, Color color) {
         this.name = name;
+        this.color = color;
         this.mass = mass;
         this.radius = radius;
-        this.position = position;
-        this.currentMovement = currentMovement;
-        this.color = color;
+        this.x = position.getX(); this.y = position.getY(); this.z = position.getZ();
+        this.vx = currentMovement.getX(); this.vy = currentMovement.getY(); this.vz = currentMovement.getZ();
     }
 
     public CelestialBody(CelestialBody body, Vector3 position, Vector3 currentMovement) {
-        this(body.name, body.mass, body.radius, position, currentMovement, body.color);
+        this(body.name, body.getMass(), body.getRadius(), position, currentMovement, body.color);
+    }
+
+    // Makes this body a view on the body with index 'index' in 'store'.
+    void bind(BodyStore store, int index) {
+        this.store = store;
+        this.index = index;
     }
 
     // Returns the distance between this celestial body and the specified 'body'.
     public double distanceTo(CelestialBody body) {
 
-        return this.position.distanceTo(body.position);
+        double dx = body.getX() - getX(), dy = body.getY() - getY(), dz = body.getZ() - getZ();
+        return Math.sqrt(dx*dx + dy*dy + dz*dz);
     }
 
     // Returns a vector representing the gravitational force exerted by 'body' on this celestial body.
     public Vector3 gravitationalForce(GeneralBody body) {
 
-        Vector3 direction = body.getPosition().minus(this.position);
-        double r = direction.length();
-        direction.normalize();
-        double force = Config.G*this.mass*body.getMass()/(r*r);
-        return direction.times(force);
+        Vector3 p = body.getPosition();
+        return gravitationalForce(body.getMass(), p.getX(), p.getY(), p.getZ());
+    }
+
+    // Returns a vector representing the gravitational force exerted by a mass 'mass' at the
+    // position (x,y,z) on this celestial body, without creating any temporary vectors.
+    // The force is softened according to Config.SOFTENING.
+    public Vector3 gravitationalForce(double mass, double x, double y, double z) {
+
+        double dx = x - getX(), dy = y - getY(), dz = z - getZ();
+        double r2 = dx*dx + dy*dy + dz*dz;
+        double force = Config.G*this.getMass()*mass*GravityKernel.inverseCube(r2);
+        return new Vector3(dx*force, dy*force, dz*force);
     }
 
     // Moves this body to a new position, according to the specified force vector 'force' exerted
@@ -47,11 +64,12 @@ public class CelestialBody implements GeneralBody{
     // (Movement depends on the mass of this body, its current movement and the exerted force.)
     public void move(Vector3 force) {
 
-        Vector3 oldPosition = this.position;
-        Vector3 newPosition = this.position.plus(this.currentMovement).plus(force.times(1/mass));
-        currentMovement = newPosition.minus(oldPosition);
-        position = newPosition;
-
+        if(store != null){
+            store.move(index, force.getX(), force.getY(), force.getZ());
+            return;
+        }
+        vx += force.getX()/mass; vy += force.getY()/mass; vz += force.getZ()/mass;
+        x += vx; y += vy; z += vz;
 
     }
     // Returns a string with the information about this celestial body including
@@ -59,9 +77,9 @@ public class CelestialBody implements GeneralBody{
     // "Earth, 5.972E24 kg, radius: 6371000.0 m, position: [1.48E11,0.0,0.0] m, movement: [0.0,29290.0,0.0] m/s."
     public String toString() {
 
-        return name + ", " + mass + " kg, radius: " + radius + " m, position: " + position.toString() +
+        return name + ", " + getMass() + " kg, radius: " + getRadius() + " m, position: " + getPosition().toString() +
                 " m, " +
-                "movement: " + currentMovement.toString() + " m/s.";
+                "movement: " + getCurrentMovement().toString() + " m/s.";
     }
 
     // Prints the information about this celestial body including
@@ -77,7 +95,7 @@ public class CelestialBody implements GeneralBody{
     // (use a conversion based on the logarithm as in 'Simulation.java').
     public void draw() {
 
-        position.drawAsDot(1e9*Math.log10(radius), color);
+        getPosition().drawAsDot(1e9*Math.log10(getRadius()), color);
 
     }
 
@@ -89,7 +107,7 @@ public class CelestialBody implements GeneralBody{
 
         StdDraw.setPenRadius(sizeOnScreen);
         StdDraw.setPenColor(color);
-        StdDraw.point(position.getX(),position.getY());
+        StdDraw.point(getX(),getY());
 
     }
 
@@ -101,22 +119,41 @@ public class CelestialBody implements GeneralBody{
 
     public Color getColor(){return color;}
 
-    public double getMass(){return mass; }
+    public double getMass(){return store == null ? mass : store.getMass(index); }
 
-    //get position
+    //get position as new vector
     public Vector3 getPosition() {
-        return position;
+        return new Vector3(getX(), getY(), getZ());
     }
 
-    //get movement
-    public Vector3 getCurrentMovement(){ return  currentMovement;}
+    //get the coordinates of the position
+    public double getX(){ return store == null ? x : store.getX(index); }
+
+    public double getY(){ return store == null ? y : store.getY(index); }
+
+    public double getZ(){ return store == null ? z : store.getZ(index); }
+
+    //get movement as new vector
+    public Vector3 getCurrentMovement(){
+        if(store == null) return new Vector3(vx, vy, vz);
+        return new Vector3(store.getVX(index), store.getVY(index), store.getVZ(index));
+    }
 
     //get radius
     public double getRadius() {
-        return radius;
+        return store == null ? radius : store.getRadius(index);
     }
 
     public void setCurrentMovement(Vector3 movement){
-        this.currentMovement=movement;
+        if(store == null){
+            vx = movement.getX(); vy = movement.getY(); vz = movement.getZ();
+            return;
+        }
+        store.setVelocity(index, movement.getX(), movement.getY(), movement.getZ());
     }
+
+    //get the store that holds the state of this body and the index in it, null if the body is not in a store
+    public BodyStore getStore(){ return store; }
+
+    public int getIndex(){ return index; }
 }
@@ -1,37 +1,100 @@
 import java.awt.*;
 
 /**
- * represents a collection of bodies and supplies their total mass and centre of gravity
+ * represents a collection of bodies and supplies their total mass and centre of gravity.
+ * if Config.QUADRUPOLE is set it also supplies the quadrupole force of the bodies
  */
 public class CelestialClusterBody implements GeneralBody{
     private double mass;
-    private Vector3 positionCOG;
+    // the mass weighted sum of the positions, divided by the mass this is the centre of gravity
+    private double weightedX, weightedY, weightedZ;
+    // the mass weighted second moments of the positions, relative to the first body to keep them precise
+    private double refX, refY, refZ;
+    private double sumXX, sumXY, sumXZ, sumYY, sumYZ, sumZZ;
 
     public CelestialClusterBody(){
         this.mass=0;
-        this.positionCOG=new Vector3(0,0,0);
     }
 
     public CelestialClusterBody(GeneralBody body){
-        this.mass=body.getMass();
-        this.positionCOG=body.getPosition();
+        addBody(body);
     }
 
     public double getMass(){
         return mass;
     }
 
+    /**
+     * returns the centre of gravity as new vector
+     * @return the centre of gravity
+     */
     public Vector3 getPosition(){
-        return positionCOG;
+        return new Vector3(getX(), getY(), getZ());
     }
 
-    public void addBody(GeneralBody body){
+    /**
+     * returns the x-coordinate of the centre of gravity
+     * @return the x-coordinate
+     */
+    public double getX(){
+        return mass == 0 ? 0 : weightedX/mass;
+    }
+
+    /**
+     * returns the y-coordinate of the centre of gravity
+     * @return the y-coordinate
+     */
+    public double getY(){
+        return mass == 0 ? 0 : weightedY/mass;
+    }
 
-        Vector3 newCOG = positionCOG.times(mass).plus(body.getPosition().times(body.getMass()));
-        mass += body.getMass();
-        newCOG = newCOG.times(1/mass);
-        positionCOG = newCOG;
+    /**
+     * returns the z-coordinate of the centre of gravity
+     * @return the z-coordinate
+     */
+    public double getZ(){
+        return mass == 0 ? 0 : weightedZ/mass;
+    }
+
+    /**
+     * adds a body to the cluster, the mass and centre of gravity are accumulated in place
+     * @param body the body to add
+     */
+    public void addBody(GeneralBody body){
+        Vector3 p = body.getPosition();
+        double m = body.getMass();
+        weightedX += p.getX()*m;
+        weightedY += p.getY()*m;
+        weightedZ += p.getZ()*m;
+        if(Config.QUADRUPOLE){
+            if(mass == 0){
+                refX = p.getX(); refY = p.getY(); refZ = p.getZ();
+            }
+            double dx = p.getX()-refX, dy = p.getY()-refY, dz = p.getZ()-refZ;
+            sumXX += m*dx*dx; sumXY += m*dx*dy; sumXZ += m*dx*dz;
+            sumYY += m*dy*dy; sumYZ += m*dy*dz; sumZZ += m*dz*dz;
+        }
+        mass += m;
+    }
 
+    /**
+     * returns the quadrupole part of the force exerted by this cluster on a body, the monopole is not included.
+     * the quadrupole moment about the centre of gravity is derived from the second moments, see GravityKernel.addQuadrupole
+     * @param body the body
+     * @return the force as vector
+     */
+    public Vector3 quadrupoleForce(CelestialBody body){
+        if(mass == 0) return new Vector3(0,0,0);
+        // the centre of gravity relative to the reference point
+        double cx = weightedX/mass - refX, cy = weightedY/mass - refY, cz = weightedZ/mass - refZ;
+        double txx = sumXX - mass*cx*cx, txy = sumXY - mass*cx*cy, txz = sumXZ - mass*cx*cz;
+        double tyy = sumYY - mass*cy*cy, tyz = sumYZ - mass*cy*cz, tzz = sumZZ - mass*cz*cz;
+        double trace = txx + tyy + tzz;
+        double[] acc = new double[3];
+        GravityKernel.addQuadrupole(getX() - body.getX(), getY() - body.getY(), getZ() - body.getZ(),
+                3*txx - trace, 3*txy, 3*txz, 3*tyy - trace, 3*tyz, acc);
+        double f = Config.G*body.getMass();
+        return new Vector3(acc[0]*f, acc[1]*f, acc[2]*f);
     }
 
     public static void main(String[] args) {
@@ -41,7 +104,7 @@ public class CelestialClusterBody implements GeneralBody{
         CelestialClusterBody clusterBody1 = new CelestialClusterBody();
         clusterBody1.addBody(m1);
         clusterBody1.addBody(m2);
-        System.out.println(clusterBody1.positionCOG.toString());
+        System.out.println(clusterBody1.getPosition().toString());
         System.out.println("should be: [-36.285714,-12.571429,11.142857]");
         System.out.println(clusterBody1.mass);
         System.out.println(m1.getMass()+m2.getMass());
@@ -16,6 +16,222 @@ public class Config {
      */
     public static final double THETA = 1;
 
+    /**
+     * the criterion that decides if a node of the tree is used as a whole, it can be changed at runtime
+     * with BarnesHutOctree.setAcceptance.
+     * AcceptanceCriterion.RELATIVE needs the acceleration of a body from the last force calculation,
+     * as long as it is unknown (e.g. in the first step) the geometric criterion with RELATIVE_START_THETA is used
+     */
+    public static final AcceptanceCriterion ACCEPTANCE = AcceptanceCriterion.GEOMETRIC;
+
+    /**
+     * the allowed relative error of the acceleration for AcceptanceCriterion.RELATIVE
+     */
+    public static final double RELATIVE_ERROR = 0.0025;
+
+    /**
+     * the theta of the geometric criterion that AcceptanceCriterion.RELATIVE uses for a body
+     * whose acceleration is not known yet
+     */
+    public static final double RELATIVE_START_THETA = 1;
+
+    /**
+     * if true the nodes of the trees also keep their quadrupole moment and the force of a accepted node
+     * contains a quadrupole term. this costs a bit more per node, but allows a bigger THETA at the same error
+     */
+    public static final boolean QUADRUPOLE = false;
+
+    /**
+     * the kernel that softens the gravity between close bodies, so a close encounter doesn't fling them apart.
+     * it is used by all solvers for bodies and the centres of gravity of clusters,
+     * the multipole expansions (quadrupoles, FMM) are only used far away and stay unsoftened
+     */
+    public static final SofteningType SOFTENING = SofteningType.NONE;
+
+    /**
+     * the softening length eps in meters, the distance below which the gravity is softened
+     */
+    public static final double SOFTENING_LENGTH = 1e17;
+
+    /**
+     * the maximum number of bodies in a leaf of the tree,
+     * the bodies of a leaf are summed up directly when the forces are calculated
+     */
+    public static final int LEAF_CAPACITY = 8;
+
+    /**
+     * the method used to calculate the forces
+     */
+    public static final SolverType SOLVER = SolverType.BARNES_HUT;
+
+    /**
+     * if less bodies than this remain in the simulation the forces are calculated by the direct sum,
+     * whatever is selected in SOLVER
+     */
+    public static final int DIRECT_SUM_BELOW = 1000;
+
+    /**
+     * the implementation of the BarnesHut-Octree used by the simulation
+     */
+    public static final OctreeType OCTREE_TYPE = OctreeType.ARRAY;
+
+    /**
+     * if true the ArrayOctree is built from the radix sorted Morton keys of the bodies
+     * instead of inserting the bodies one by one
+     */
+    public static final boolean MORTON_BUILD = true;
+
+    /**
+     * if true the Morton build of the ArrayOctree builds the subtrees in parallel
+     */
+    public static final boolean PARALLEL_BUILD = true;
+
+    /**
+     * the number of bodies up to which a subtree is built by a single task in the parallel build
+     */
+    public static final int PARALLEL_BUILD_CUTOFF = 4096;
+
+    /**
+     * if true the ArrayOctree is kept between the iterations and only the bodies that left their leaf are moved
+     */
+    public static final boolean TREE_REFIT = true;
+
+    /**
+     * the fraction of bodies that may lie too far outside of the cells of their leaves (see REFIT_MAX_SLACK)
+     * after refits, if more bodies are too far out the tree is rebuilt
+     */
+    public static final double REFIT_MAX_MIGRATED = 0.25;
+
+    /**
+     * how far a body may leave the cell of its leaf during refits, in half widths of the leaf.
+     * a body that is further out counts to REFIT_MAX_MIGRATED
+     */
+    public static final double REFIT_MAX_SLACK = 1.0;
+
+    /**
+     * the factor by which the number of nodes may grow through refits, before the tree is rebuilt
+     */
+    public static final double REFIT_MAX_GROWTH = 1.5;
+
+    /**
+     * if true the trees are built on a tight bounding cube of the bodies that is computed in each iteration,
+     * instead of AREA_SIZE. bodies outside of it are not excluded, see RootBounds
+     */
+    public static final boolean ADAPTIVE_BOUNDS = true;
+
+    /**
+     * the distance from the mean position of the bodies in root mean square distances
+     * beyond which a body is an escaper. escapers are not put into the tree, their attraction is summed up directly
+     */
+    public static final double ESCAPER_RADIUS = 10;
+
+    /**
+     * the fraction by which the root of the ArrayOctree is made bigger than the bounding cube of the bodies.
+     * the tree is refitted as long as the bounding cube stays inside of the padded root
+     */
+    public static final double ROOT_PADDING = 0.2;
+
+    /**
+     * the number of iterations after which the bodies in the BodyStore are sorted into the Morton order
+     * of their positions, so the bodies of a leaf are near each other in memory. 0 -> the order is kept
+     */
+    public static final int REORDER_INTERVAL = 16;
+
+    /**
+     * if true the state of the bodies and the nodes of the ArrayOctree are kept in direct buffers outside of the heap.
+     * their size is limited by -XX:MaxDirectMemorySize instead of -Xmx
+     */
+    public static final boolean OFF_HEAP = false;
+
+    /**
+     * if true the ArrayOctree walks the tree once for each group of nearby bodies instead of once for each body,
+     * the accepted nodes and bodies are collected in a list that is summed up for each body of the group
+     */
+    public static final boolean GROUPED_WALK = true;
+
+    /**
+     * the maximum number of bodies in a group of the grouped walk
+     */
+    public static final int GROUP_SIZE = 32;
+
+    /**
+     * the order of the multipole and local expansions of the FMM, a higher order is more accurate but slower
+     */
+    public static final int FMM_ORDER = 4;
+
+    /**
+     * the opening criterion of the FMM: two cells interact with their expansions
+     * if the sum of their radii is smaller than FMM_THETA times the distance of their centres
+     */
+    public static final double FMM_THETA = 0.8;
+
+    /**
+     * the maximum number of bodies in a leaf cell of the FMM
+     */
+    public static final int FMM_LEAF_SIZE = 64;
+
+    /**
+     * the number of cells per dimension of the grid of the PmSolver, a power of two.
+     * the FFT works on a grid with twice as many points per dimension
+     */
+    public static final int PM_GRID = 64;
+
+    /**
+     * the split radius of the TreePmSolver in cells of the PM grid:
+     * the forces below it come from the tree, the forces above it from the grid
+     */
+    public static final double TREEPM_SPLIT = 1.25;
+
+    /**
+     * the cutoff radius of the short-range forces of the TreePmSolver in split radii,
+     * nodes of the tree farther away are not visited
+     */
+    public static final double TREEPM_CUTOFF = 4.5;
+
+    /**
+     * if true the direct sums of the interaction lists use the blocked kernel, otherwise the scalar kernel.
+     * see GravityKernel
+     */
+    public static final boolean BLOCKED_KERNEL = true;
+
+    /**
+     * if true the forces are calculated in parallel, each thread handles a range of bodies
+     */
+    public static final boolean PARALLEL_FORCE = true;
+
+    /**
+     * the number of threads used for the parallel parts of the simulation,
+     * 0 means one thread for each available processor
+     */
+    public static final int PARALLELISM = 0;
+
+    /**
+     * the integration used to move the bodies
+     */
+    public static final IntegratorType INTEGRATOR = IntegratorType.LEAPFROG;
+
+    /**
+     * the simulated time of one iteration in seconds.
+     * the leapfrog integration stays stable for much larger steps than the Euler integration
+     */
+    public static final double TIME_STEP = 1;
+
+    /**
+     * the deepest level of the block time steps, the smallest time step is TIME_STEP/2^MAX_TIMESTEP_LEVEL
+     */
+    public static final int MAX_TIMESTEP_LEVEL = 6;
+
+    /**
+     * the accuracy parameter of the block time steps,
+     * the time step of a body with the acceleration a is at most TIMESTEP_ETA*sqrt(TIMESTEP_LENGTH/a)
+     */
+    public static final double TIMESTEP_ETA = 0.025;
+
+    /**
+     * the length scale of the time step criterion of the block time steps, 1e-4 of the observed area
+     */
+    public static final double TIMESTEP_LENGTH = 3e16;
+
     /**
      * the size of the displayed window
      */
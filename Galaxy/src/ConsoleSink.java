@@ -0,0 +1,35 @@
+/**
+ * prints the metrics of every n-th iteration and the throughput at the end of a headless run to System.out
+ */
+public class ConsoleSink implements SimulationSink {
+
+    private final long interval;
+
+    /**
+     * creates a sink for the console
+     * @param interval the number of iterations between two printed metrics, 0 -> only the report at the end
+     */
+    public ConsoleSink(long interval){
+        this.interval = interval;
+    }
+
+    @Override
+    public void metrics(long iteration, double seconds, int remainingBodies, long iterationNanos) {
+        if(interval > 0 && iteration % interval == 0){
+            System.out.printf("iteration %d: %.3fms, passed time: %.0fs, remaining bodies: %d%n",
+                    iteration, iterationNanos/1e6, seconds, remainingBodies);
+        }
+    }
+
+    @Override
+    public void snapshot(long iteration, double seconds, BodyStore store) {
+    }
+
+    @Override
+    public void finish(long iterations, double seconds, int remainingBodies, long bodySteps, long nanos) {
+        double s = nanos/1e9;
+        System.out.printf("%d iterations in %.3fs (%.3fms per iteration), passed time: %.0fs, remaining bodies: %d%n",
+                iterations, s, iterations > 0 ? s*1e3/iterations : 0, seconds, remainingBodies);
+        System.out.printf("throughput: %.4g body-steps/s%n", s > 0 ? bodySteps/s : 0);
+    }
+}
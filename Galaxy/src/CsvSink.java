@@ -0,0 +1,88 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * writes the results of a headless run as CSV files into a directory:
+ * metrics.csv with one line per iteration, snapshot_&lt;iteration&gt;.csv with one line per remaining body
+ * (the id of the body, see BodyStore.getId, its position, movement and mass) and summary.csv at the end
+ */
+public class CsvSink implements SimulationSink {
+
+    private final Path directory;
+    private final PrintWriter metrics;
+
+    /**
+     * creates the directory if necessary and opens metrics.csv
+     * @param directory the directory
+     * @throws UncheckedIOException if the files can't be written
+     */
+    public CsvSink(String directory){
+        this.directory = Paths.get(directory);
+        try {
+            Files.createDirectories(this.directory);
+            metrics = open("metrics.csv");
+        } catch (IOException e){
+            throw new UncheckedIOException(e);
+        }
+        metrics.println("iteration,seconds,remaining,nanos");
+    }
+
+    @Override
+    public void metrics(long iteration, double seconds, int remainingBodies, long iterationNanos) {
+        metrics.println(iteration + "," + seconds + "," + remainingBodies + "," + iterationNanos);
+    }
+
+    @Override
+    public void snapshot(long iteration, double seconds, BodyStore store) {
+        try (PrintWriter out = open(String.format("snapshot_%08d.csv", iteration))){
+            out.println("id,x,y,z,vx,vy,vz,mass");
+            StringBuilder line = new StringBuilder();
+            for(int i=0; i<store.size(); i++){
+                if(store.isExcluded(i)) continue;
+                line.setLength(0);
+                line.append(store.getId(i)).append(',')
+                        .append(store.getX(i)).append(',').append(store.getY(i)).append(',').append(store.getZ(i)).append(',')
+                        .append(store.getVX(i)).append(',').append(store.getVY(i)).append(',').append(store.getVZ(i)).append(',')
+                        .append(store.getMass(i));
+                out.println(line);
+            }
+            check(out);
+        } catch (IOException e){
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void finish(long iterations, double seconds, int remainingBodies, long bodySteps, long nanos) {
+        check(metrics);
+        metrics.close();
+        try (PrintWriter out = open("summary.csv")){
+            out.println("iterations,seconds,remaining,body_steps,nanos,body_steps_per_second");
+            out.println(iterations + "," + seconds + "," + remainingBodies + "," + bodySteps + "," + nanos + ","
+                    + (nanos > 0 ? bodySteps/(nanos/1e9) : 0));
+            check(out);
+        } catch (IOException e){
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private PrintWriter open(String name) throws IOException {
+        BufferedWriter writer = Files.newBufferedWriter(directory.resolve(name), StandardCharsets.UTF_8);
+        return new PrintWriter(writer);
+    }
+
+    /**
+     * a PrintWriter swallows its exceptions, so the error flag is checked after writing
+     */
+    private void check(PrintWriter out){
+        if(out.checkError()){
+            throw new UncheckedIOException(new IOException("writing to " + directory + " failed"));
+        }
+    }
+}
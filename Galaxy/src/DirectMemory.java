@@ -0,0 +1,109 @@
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * allocates and frees the direct buffers of the off-heap arrays (DoubleArray, IntArray).
+ * an array is split into buffers of CHUNK elements, so it isn't limited by the 2 GB of a single ByteBuffer,
+ * only by the int indices.
+ * a direct buffer is normally freed when the garbage collector finds it, so the memory of a replaced array
+ * would stay in use for an unknown time. free() releases it at once with the cleaner of the buffer:
+ * sun.misc.Unsafe.invokeCleaner since java 9, the cleaner() of the buffer on java 8.
+ * if neither is accessible the buffer is left to the garbage collector
+ */
+final class DirectMemory {
+
+    /**
+     * the number of elements in one buffer is 2^CHUNK_BITS
+     */
+    static final int CHUNK_BITS = 27;
+    static final int CHUNK = 1 << CHUNK_BITS;
+    static final int CHUNK_MASK = CHUNK - 1;
+
+    /**
+     * the largest length of an array, the indices are ints
+     */
+    static final long MAX_LENGTH = Integer.MAX_VALUE - 8;
+
+    private static final Object UNSAFE;
+    private static final Method INVOKE_CLEANER;
+
+    static {
+        Object unsafe = null;
+        Method invokeCleaner = null;
+        try {
+            Class<?> type = Class.forName("sun.misc.Unsafe");
+            Field field = type.getDeclaredField("theUnsafe");
+            field.setAccessible(true);
+            unsafe = field.get(null);
+            invokeCleaner = type.getMethod("invokeCleaner", ByteBuffer.class);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            // java 8 has no invokeCleaner, the cleaner of the buffer is used instead
+            unsafe = null;
+            invokeCleaner = null;
+        }
+        UNSAFE = unsafe;
+        INVOKE_CLEANER = invokeCleaner;
+    }
+
+    private DirectMemory(){}
+
+    /**
+     * checks that an array of the given length can be indexed by an int
+     * @param length the length of the array
+     * @param type the name of the element type for the message
+     * @return the length as an int
+     */
+    static int checkLength(long length, String type){
+        if(length < 0 || length > MAX_LENGTH){
+            throw new IllegalArgumentException("an array of " + length + " " + type + "s is not possible, "
+                    + "the indices are ints, so an array can have at most " + MAX_LENGTH + " elements");
+        }
+        return (int) length;
+    }
+
+    /**
+     * allocates the direct buffers for an array, each buffer has CHUNK elements, the last one the rest
+     * @param length the number of elements
+     * @param bytes the size of an element in bytes
+     * @return the buffers, filled with zeros
+     */
+    static ByteBuffer[] allocate(int length, int bytes){
+        int chunks = (int) (((long) length + CHUNK - 1) >>> CHUNK_BITS);
+        ByteBuffer[] buffers = new ByteBuffer[chunks];
+        for(int c=0; c<chunks; c++){
+            long elements = Math.min(CHUNK, length - ((long) c << CHUNK_BITS));
+            buffers[c] = ByteBuffer.allocateDirect((int) (elements*bytes)).order(ByteOrder.nativeOrder());
+        }
+        return buffers;
+    }
+
+    /**
+     * frees the memory of the buffers at once, they must not be used afterwards
+     * @param buffers the buffers returned by allocate
+     */
+    static void free(ByteBuffer[] buffers){
+        for(int c=0; c<buffers.length; c++){
+            free(buffers[c]);
+            buffers[c] = null;
+        }
+    }
+
+    private static void free(ByteBuffer buffer){
+        try {
+            if(INVOKE_CLEANER != null){
+                INVOKE_CLEANER.invoke(UNSAFE, buffer);
+                return;
+            }
+            Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+            cleanerMethod.setAccessible(true);
+            Object cleaner = cleanerMethod.invoke(buffer);
+            if(cleaner != null){
+                cleaner.getClass().getMethod("clean").invoke(cleaner);
+            }
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            // the buffer is freed by the garbage collector
+        }
+    }
+}
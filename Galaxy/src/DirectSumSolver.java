@@ -0,0 +1,235 @@
+import java.util.Arrays;
+
+/**
+ * calculates the forces by summing up the attraction of every pair of bodies, this needs O(N^2) operations.
+ * for a few thousand bodies it is faster than building a tree, and it is the exact reference for the other solvers.
+ *
+ * the bodies are split into tiles of TILE bodies that fit into the cache. each pair of tiles is handled once
+ * and the attraction of each pair of bodies is added to both of them (Newton's third law), so only half of the pairs
+ * are computed. the rows of tiles are distributed over the threads, each thread sums up into its own buffers
+ * which are added up at the end.
+ * if only some bodies need a force (block time steps), the tiles of these bodies are distributed over the threads
+ * and each tile sums up the attraction of all tiles of bodies, without using Newton's third law
+ */
+public class DirectSumSolver implements ForceSolver {
+
+    // the number of bodies in a tile
+    private static final int TILE = 256;
+
+    private final Boundary3D area;
+
+    // the bodies that are not excluded
+    private int bodyCount;
+    private int[] storeIndex = new int[16];
+    private double[] px = new double[16], py = new double[16], pz = new double[16], pm = new double[16];
+
+    // the attraction summed up by each thread, 3 entries per body
+    private double[][] buffers = new double[0][];
+    // the tile of bodies that a thread calculates the force for, kept between the force calculations
+    private final ThreadLocal<Tile> targets = ThreadLocal.withInitial(Tile::new);
+
+    /**
+     * creates a new direct sum solver for a given area in space
+     * @param area the given area, bodies outside of it are excluded unless Config.ADAPTIVE_BOUNDS is set
+     * @param expectedBodies the number of bodies that will probably be added
+     */
+    public DirectSumSolver(Boundary3D area, int expectedBodies){
+        this.area = area;
+        allocateBodies(Math.max(expectedBodies, 1));
+    }
+
+    /**
+     * copies the bodies of the store that are not excluded,
+     * bodies outside of the area are excluded unless Config.ADAPTIVE_BOUNDS is set
+     * @param store the store with the bodies
+     * @return the number of bodies that were excluded by this call
+     */
+    @Override
+    public int update(BodyStore store) {
+        if(store.size() > storeIndex.length){
+            allocateBodies(Math.max(store.size(), 2*storeIndex.length));
+        }
+        int newlyExcluded = 0;
+        int n = 0;
+        for(int i=0; i<store.size(); i++){
+            if(store.isExcluded(i)) continue;
+            double x = store.getX(i), y = store.getY(i), z = store.getZ(i);
+            if(!Config.ADAPTIVE_BOUNDS && !area.contains(x, y, z)){
+                store.exclude(i);
+                newlyExcluded++;
+                continue;
+            }
+            storeIndex[n] = i;
+            px[n] = x; py[n] = y; pz[n] = z;
+            pm[n] = store.getMass(i);
+            n++;
+        }
+        bodyCount = n;
+        return newlyExcluded;
+    }
+
+    /**
+     * calculates the force for each body in the store, the index in the result is the index in the store.
+     * excluded bodies get a zero force
+     * @param store the store with the bodies
+     * @return a vector array with the calculated forces
+     */
+    @Override
+    public Vector3[] calculateForce(BodyStore store) {
+        int n = store.size();
+        double[] fx = new double[n], fy = new double[n], fz = new double[n];
+        calculateForce(store, fx, fy, fz);
+        return ForceSolver.toVectors(fx, fy, fz, n);
+    }
+
+    /**
+     * calculates the force for each body in the store and writes it into the arrays at the index of the body.
+     * excluded bodies get a zero force
+     * @param store the store with the bodies
+     * @param fx the x-components of the forces, at least store.size() entries
+     * @param fy the y-components of the forces
+     * @param fz the z-components of the forces
+     */
+    @Override
+    public void calculateForce(BodyStore store, double[] fx, double[] fy, double[] fz) {
+        int tiles = (bodyCount + TILE - 1)/TILE;
+        int threads = Config.PARALLEL_FORCE ? Math.max(1, Math.min(Parallel.getParallelism(), tiles)) : 1;
+        if(buffers.length < threads){
+            buffers = Arrays.copyOf(buffers, threads);
+        }
+        for(int t=0; t<threads; t++){
+            if(buffers[t] == null || buffers[t].length < 3*bodyCount){
+                buffers[t] = new double[3*storeIndex.length];
+            }
+        }
+        // the row I has tiles-I pairs, so the rows are dealt out to the threads in turns
+        Parallel.forRange(threads, 1, (first, last) -> {
+            for(int t=first; t<last; t++){
+                double[] acc = buffers[t];
+                Arrays.fill(acc, 0, 3*bodyCount, 0);
+                for(int row=t; row<tiles; row+=threads){
+                    for(int column=row; column<tiles; column++){
+                        interact(row*TILE, Math.min((row+1)*TILE, bodyCount),
+                                column*TILE, Math.min((column+1)*TILE, bodyCount), acc);
+                    }
+                }
+            }
+        });
+        // the excluded bodies are not in the list
+        Arrays.fill(fx, 0, store.size(), 0);
+        Arrays.fill(fy, 0, store.size(), 0);
+        Arrays.fill(fz, 0, store.size(), 0);
+        for(int k=0; k<bodyCount; k++){
+            double ax = 0, ay = 0, az = 0;
+            for(int t=0; t<threads; t++){
+                ax += buffers[t][3*k]; ay += buffers[t][3*k+1]; az += buffers[t][3*k+2];
+            }
+            double f = Config.G*pm[k];
+            fx[storeIndex[k]] = ax*f; fy[storeIndex[k]] = ay*f; fz[storeIndex[k]] = az*f;
+        }
+    }
+
+    /**
+     * calculates the force for some bodies of the store and writes it into the arrays at the index of the body,
+     * the entries of the other bodies are not changed. excluded bodies get a zero force
+     * @param store the store with the bodies
+     * @param indices the indices of the bodies in the store
+     * @param n the number of indices
+     * @param fx the x-components of the forces, at least store.size() entries
+     * @param fy the y-components of the forces
+     * @param fz the z-components of the forces
+     */
+    @Override
+    public void calculateForce(BodyStore store, int[] indices, int n, double[] fx, double[] fy, double[] fz) {
+        int tiles = (bodyCount + TILE - 1)/TILE;
+        Parallel.RangeTask task = (from, to) -> {
+            Tile tile = targets.get();
+            for(int t=from; t<to; t++){
+                int first = t*TILE, count = Math.min(TILE, n - first);
+                for(int k=0; k<count; k++){
+                    int i = indices[first + k];
+                    tile.x[k] = store.getX(i); tile.y[k] = store.getY(i); tile.z[k] = store.getZ(i);
+                }
+                Arrays.fill(tile.acc, 0, 3*count, 0);
+                for(int column=0; column<tiles; column++){
+                    attract(tile, count, column*TILE, Math.min((column+1)*TILE, bodyCount));
+                }
+                for(int k=0; k<count; k++){
+                    int i = indices[first + k];
+                    double f = store.isExcluded(i) ? 0 : Config.G*store.getMass(i);
+                    fx[i] = tile.acc[3*k]*f; fy[i] = tile.acc[3*k+1]*f; fz[i] = tile.acc[3*k+2]*f;
+                }
+            }
+        };
+        int targetTiles = (n + TILE - 1)/TILE;
+        if(Config.PARALLEL_FORCE){
+            Parallel.forRange(targetTiles, 1, task);
+        } else {
+            task.run(0, targetTiles);
+        }
+    }
+
+    /**
+     * adds the attraction of the bodies [from, to) to each body of the tile, a body doesn't attract itself
+     * @param tile the bodies the attraction is added to
+     * @param count the number of bodies in the tile
+     */
+    private void attract(Tile tile, int count, int from, int to){
+        for(int k=0; k<count; k++){
+            double x = tile.x[k], y = tile.y[k], z = tile.z[k];
+            double ax = 0, ay = 0, az = 0;
+            for(int j=from; j<to; j++){
+                double dx = px[j]-x, dy = py[j]-y, dz = pz[j]-z;
+                double r2 = dx*dx + dy*dy + dz*dz;
+                if(r2 == 0) continue;
+                double s = GravityKernel.inverseCube(r2)*pm[j];
+                ax += dx*s; ay += dy*s; az += dz*s;
+            }
+            tile.acc[3*k] += ax; tile.acc[3*k+1] += ay; tile.acc[3*k+2] += az;
+        }
+    }
+
+    /**
+     * adds the attraction of each pair of bodies from the tiles [from1, to1) and [from2, to2) to both bodies.
+     * if the tiles are the same, each pair is handled once
+     * @param acc the buffer the attraction is added to
+     */
+    private void interact(int from1, int to1, int from2, int to2, double[] acc){
+        for(int i=from1; i<to1; i++){
+            double x = px[i], y = py[i], z = pz[i], m = pm[i];
+            double ax = 0, ay = 0, az = 0;
+            for(int j = from1 == from2 ? i+1 : from2; j<to2; j++){
+                double dx = px[j]-x, dy = py[j]-y, dz = pz[j]-z;
+                double r2 = dx*dx + dy*dy + dz*dz;
+                if(r2 == 0) continue;
+                double s = GravityKernel.inverseCube(r2);
+                double si = s*pm[j], sj = s*m;
+                ax += dx*si; ay += dy*si; az += dz*si;
+                acc[3*j] -= dx*sj; acc[3*j+1] -= dy*sj; acc[3*j+2] -= dz*sj;
+            }
+            acc[3*i] += ax; acc[3*i+1] += ay; acc[3*i+2] += az;
+        }
+    }
+
+    /**
+     * draws the boundary of the area
+     */
+    @Override
+    public void show() {
+        area.show(java.awt.Color.GRAY);
+    }
+
+    private void allocateBodies(int capacity){
+        storeIndex = new int[capacity];
+        px = new double[capacity]; py = new double[capacity]; pz = new double[capacity];
+        pm = new double[capacity];
+    }
+
+    /**
+     * the positions of a tile of bodies and their summed up attraction, 3 entries per body
+     */
+    private static final class Tile {
+        final double[] x = new double[TILE], y = new double[TILE], z = new double[TILE];
+        final double[] acc = new double[3*TILE];
+    }
+}
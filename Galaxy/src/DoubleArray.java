@@ -0,0 +1,147 @@
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.util.Arrays;
+
+/**
+ * represents a fixed size array of doubles, either on the java heap or off-heap in a direct buffer.
+ * which one is used by allocate() is set in Config.OFF_HEAP,
+ * so the memory of large simulations isn't limited by the heap size and isn't touched by the garbage collector.
+ * Only one of the two implementations is used in a run, so the JIT can inline the calls.
+ * an off-heap array is split into direct buffers of DirectMemory.CHUNK elements, so it can be longer than 2 GB.
+ * an array that is replaced by a bigger one is freed with resize() at once, not when the garbage collector finds it
+ */
+public abstract class DoubleArray {
+
+    /**
+     * creates an array filled with zeros, on the heap or off-heap according to Config.OFF_HEAP
+     * @param length the length of the array, at most DirectMemory.MAX_LENGTH
+     * @return the array
+     */
+    public static DoubleArray allocate(long length){
+        int n = DirectMemory.checkLength(length, "double");
+        return Config.OFF_HEAP ? new OffHeap(n) : new Heap(n);
+    }
+
+    /**
+     * returns the value at index i
+     * @param i the index
+     * @return the value
+     */
+    public abstract double get(int i);
+
+    /**
+     * sets the value at index i
+     * @param i the index
+     * @param value the new value
+     */
+    public abstract void set(int i, double value);
+
+    /**
+     * returns the length of the array
+     * @return the length
+     */
+    public abstract int length();
+
+    /**
+     * creates a new array of the same kind with the given length and copies the values of this array into it
+     * @param length the length of the new array
+     * @return the new array
+     */
+    public DoubleArray copyOf(long length){
+        int newLength = DirectMemory.checkLength(length, "double");
+        DoubleArray copy = this instanceof OffHeap ? new OffHeap(newLength) : new Heap(newLength);
+        int n = Math.min(newLength, length());
+        for(int i=0; i<n; i++){
+            copy.set(i, get(i));
+        }
+        return copy;
+    }
+
+    /**
+     * creates a new array of the same kind with the given length, copies the values of this array into it
+     * and frees this array
+     * @param length the length of the new array
+     * @return the new array
+     */
+    public DoubleArray resize(long length){
+        DoubleArray copy = copyOf(length);
+        free();
+        return copy;
+    }
+
+    /**
+     * frees the memory of an off-heap array at once, the array must not be used afterwards.
+     * an array on the heap is left to the garbage collector
+     */
+    public abstract void free();
+
+    /**
+     * an array on the java heap
+     */
+    static final class Heap extends DoubleArray {
+        private final double[] values;
+
+        Heap(int length){
+            values = new double[length];
+        }
+
+        @Override
+        public double get(int i) {
+            return values[i];
+        }
+
+        @Override
+        public void set(int i, double value) {
+            values[i] = value;
+        }
+
+        @Override
+        public int length() {
+            return values.length;
+        }
+
+        @Override
+        public void free() {
+        }
+    }
+
+    /**
+     * an array in direct buffers outside of the java heap, the element i is in the buffer i/CHUNK.
+     * the size of all direct buffers is limited by -XX:MaxDirectMemorySize
+     */
+    static final class OffHeap extends DoubleArray {
+        private final ByteBuffer[] buffers;
+        private final DoubleBuffer[] chunks;
+        private final int length;
+
+        OffHeap(int length){
+            this.length = length;
+            buffers = DirectMemory.allocate(length, Double.BYTES);
+            chunks = new DoubleBuffer[buffers.length];
+            for(int c=0; c<buffers.length; c++){
+                chunks[c] = buffers[c].asDoubleBuffer();
+            }
+        }
+
+        @Override
+        public double get(int i) {
+            return chunks[i >>> DirectMemory.CHUNK_BITS].get(i & DirectMemory.CHUNK_MASK);
+        }
+
+        @Override
+        public void set(int i, double value) {
+            chunks[i >>> DirectMemory.CHUNK_BITS].put(i & DirectMemory.CHUNK_MASK, value);
+        }
+
+        @Override
+        public int length() {
+            return length;
+        }
+
+        @Override
+        public void free() {
+            Arrays.fill(chunks, null);
+            DirectMemory.free(buffers);
+        }
+    }
+}
@@ -30,10 +30,11 @@ public class DynEmptyNode implements DynOctreeNodeInterface {
      * calculates the force applied to a given body through this node.
      * this is obviously always zero
      * @param body the body
+     * @param acceptance not used by a leaf
      * @return a zero vector
      */
     @Override
-    public Vector3 calculateForce(CelestialBody body) {
+    public Vector3 calculateForce(CelestialBody body, Acceptance acceptance) {
         return new Vector3(0,0,0);
     }
 
@@ -1,9 +1,10 @@
 /**
- * represents a node that contains exactly one body
+ * represents a leaf node that contains up to Config.LEAF_CAPACITY bodies
  */
 public class DynNotEmptyNode implements DynOctreeNodeInterface {
 
-    private final CelestialBody body;
+    private final CelestialBody[] bodies = new CelestialBody[Config.LEAF_CAPACITY];
+    private int size;
     private final Boundary3D area;
 
     /**
@@ -12,35 +13,56 @@ public class DynNotEmptyNode implements DynOctreeNodeInterface {
      * @param area the given area in space
      */
     public DynNotEmptyNode(CelestialBody body, Boundary3D area){
-        this.body = body;
+        this.bodies[0] = body;
+        this.size = 1;
         this.area = area;
     }
 
 
     /**
-     * if we add a body into an not empty leaf node, we have to split this node and return an octree node
+     * if we add a body into an not empty leaf node, it is kept in this node as long as there is room for it.
+     * otherwise we have to split this node and return an octree node
      * @param body the body to add
-     * @return the octree node
+     * @return this node or the octree node
      */
     @Override
     public DynOctreeNodeInterface add(CelestialBody body) {
         //check if the body is in the main area
         if(!area.contains(body.getPosition())) return this;
+        if(size < bodies.length){
+            bodies[size++] = body;
+            return this;
+        }
         DynOctreeNode octreeNode = new DynOctreeNode(area);
-        octreeNode.add(this.body);
+        for(int i=0; i<size; i++){
+            octreeNode.add(bodies[i]);
+        }
         octreeNode.add(body);
         return octreeNode;
     }
 
     /**
-     * calculates the force applied to a given body through this node.
+     * calculates the force applied to a given body through this node,
+     * the bodies of the node are summed up directly in primitives, only the result is a new vector
      * @param body the body
+     * @param acceptance not used by a leaf
      * @return the calculated force
      */
     @Override
-    public Vector3 calculateForce(CelestialBody body) {
-        if(this.body.equals(body)){return new Vector3(0,0,0);}
-        return body.gravitationalForce(this.body);
+    public Vector3 calculateForce(CelestialBody body, Acceptance acceptance) {
+        double x = body.getX(), y = body.getY(), z = body.getZ();
+        double fx = 0, fy = 0, fz = 0;
+        for(int i=0; i<size; i++){
+            if(!bodies[i].equals(body)){
+                CelestialBody other = bodies[i];
+                double dx = other.getX() - x, dy = other.getY() - y, dz = other.getZ() - z;
+                double r2 = dx*dx + dy*dy + dz*dz;
+                double s = other.getMass()*GravityKernel.inverseCube(r2);
+                fx += dx*s; fy += dy*s; fz += dz*s;
+            }
+        }
+        double f = Config.G*body.getMass();
+        return new Vector3(fx*f, fy*f, fz*f);
     }
 
     /**
@@ -48,15 +70,15 @@ public class DynNotEmptyNode implements DynOctreeNodeInterface {
      */
     @Override
     public void show() {
-        area.show(body.getColor());
+        area.show(bodies[0].getColor());
     }
 
     /**
-     * the number of bodies in an non empty node is always 1
-     * @return 1
+     * returns the number of bodies in this node
+     * @return the number of bodies
      */
     @Override
     public int getSize() {
-        return 1;
+        return size;
     }
 }
@@ -1,10 +1,20 @@
+import java.util.ArrayList;
+
 /**
  * represents a dynamic implementation of an BarnesHut-Octree
  */
 public class DynOctree implements BarnesHutOctree{
 
+    // the number of bodies a thread handles at least when the forces are calculated in parallel
+    private static final int PARALLEL_GRAIN = 64;
+
     DynOctreeNodeInterface root;
-    private final Boundary3D area;
+    // the area of the root, with Config.ADAPTIVE_BOUNDS a tight cube around the bodies of the last update
+    private Boundary3D area;
+    private Acceptance acceptance = Acceptance.fromConfig();
+    // with Config.ADAPTIVE_BOUNDS: the bodies outside of the area, their attraction is summed up directly
+    private final RootBounds rootBounds = new RootBounds();
+    private final ArrayList<CelestialBody> escapers = new ArrayList<>();
 
     /**
      * creates a new BarnesHut-Octree white a given area in space
@@ -31,6 +41,53 @@ public class DynOctree implements BarnesHutOctree{
         return oldSize != root.getSize();
     }
 
+    /**
+     * updates the octree to the current positions of the bodies in the store.
+     * with Config.ADAPTIVE_BOUNDS the octree is built on the bounding cube of the bodies,
+     * the bodies outside of it are kept as escapers instead of being excluded
+     * @param store the store with the bodies
+     * @return the number of bodies that were excluded by this call
+     */
+    @Override
+    public int update(BodyStore store) {
+        if(Config.ADAPTIVE_BOUNDS){
+            area = rootBounds.compute(store, area);
+        }
+        clear();
+        int newlyExcluded = 0;
+        for(int i=0; i<store.size(); i++){
+            if(store.isExcluded(i)) continue;
+            CelestialBody body = store.getBody(i);
+            if(area.contains(body)){
+                root = root.add(body);
+            } else if(Config.ADAPTIVE_BOUNDS){
+                escapers.add(body);
+            } else {
+                store.exclude(i);
+                newlyExcluded++;
+            }
+        }
+        return newlyExcluded;
+    }
+
+    /**
+     * removes all bodies by replacing the root with an empty node
+     */
+    @Override
+    public void clear() {
+        root = new DynEmptyNode(area);
+        escapers.clear();
+    }
+
+    /**
+     * sets the criterion that decides if a node is used as a whole
+     * @param acceptance the criterion and its theta
+     */
+    @Override
+    public void setAcceptance(Acceptance acceptance) {
+        this.acceptance = acceptance;
+    }
+
     /**
      * draws the boundaries of the nodes
      */
@@ -48,11 +105,33 @@ public class DynOctree implements BarnesHutOctree{
     @Override
     public Vector3[] calculateForce(CelestialBody[] bodyList) {
         Vector3[] forceList = new Vector3[bodyList.length];
-        for(int i=0; i<bodyList.length;i++){
-            if(area.contains(bodyList[i])) {
-                forceList[i] = root.calculateForce(bodyList[i]);
-            } else forceList[i] = new Vector3(0,0,0);
+        if(Config.PARALLEL_FORCE){
+            // the tree is only read, so each thread can walk it for its own range of bodies
+            Parallel.forRange(bodyList.length, PARALLEL_GRAIN, (from, to) -> calculateForce(bodyList, forceList, from, to));
+        } else {
+            calculateForce(bodyList, forceList, 0, bodyList.length);
         }
         return forceList;
     }
+
+    /**
+     * calculates the force acting on the bodies with an index in [from, to)
+     * @param bodyList a array with the bodies
+     * @param forceList the array the forces are written to
+     * @param from the first index
+     * @param to the index after the last one
+     */
+    private void calculateForce(CelestialBody[] bodyList, Vector3[] forceList, int from, int to){
+        Acceptance acceptance = this.acceptance;
+        for(int i=from; i<to;i++){
+            CelestialBody body = bodyList[i];
+            if(Config.ADAPTIVE_BOUNDS || area.contains(body)) {
+                Vector3 force = root.calculateForce(body, acceptance);
+                for(CelestialBody escaper : escapers){
+                    if(escaper != body) force = force.plus(body.gravitationalForce(escaper));
+                }
+                forceList[i] = force;
+            } else forceList[i] = new Vector3(0,0,0);
+        }
+    }
 }
@@ -42,19 +42,28 @@ public class DynOctreeNode implements DynOctreeNodeInterface {
      * calculates the force acting on a given body through this node or its children nodes
      * according to the BarnesHut algorithm
      * @param body the body
+     * @param acceptance decides if this node is used as a whole
      * @return the cumulative force as vector
      */
     @Override
-    public Vector3 calculateForce(CelestialBody body) {
+    public Vector3 calculateForce(CelestialBody body, Acceptance acceptance) {
         Vector3 force = new Vector3(0,0,0);
-        double r = body.getPosition().distanceTo(clusterBody.getPosition());
+        double cx = clusterBody.getX(), cy = clusterBody.getY(), cz = clusterBody.getZ();
+        double dx = cx - body.getX(), dy = cy - body.getY(), dz = cz - body.getZ();
+        double r2 = dx*dx + dy*dy + dz*dz;
 
-        double d = area.getW();
-        if(r/d > Config.THETA){
-            force = body.gravitationalForce(this.clusterBody);
+        double bmax2 = 0;
+        if(acceptance.getCriterion() == AcceptanceCriterion.BMAX){
+            bmax2 = Acceptance.bmax2(area.getL()/2, area.getW()/2, area.getH()/2,
+                    cx - area.getX(), cy - area.getY(), cz - area.getZ());
+        }
+        // the acceleration of the last step is not known here, so RELATIVE falls back to the geometric criterion
+        if(acceptance.accepts(r2, area.getW(), bmax2, clusterBody.getMass(), 0)){
+            force = body.gravitationalForce(clusterBody.getMass(), cx, cy, cz);
+            if(Config.QUADRUPOLE) force = force.plus(clusterBody.quadrupoleForce(body));
         } else {
             for (int i = 0; i < octant.length; i++) {
-                force = force.plus(octant[i].calculateForce(body));
+                force = force.plus(octant[i].calculateForce(body, acceptance));
             }
         }
         return force;
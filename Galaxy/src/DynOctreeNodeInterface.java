@@ -12,9 +12,10 @@ public interface DynOctreeNodeInterface {
     /**
      * calculate the force on this body
      * @param body the body
+     * @param acceptance decides if a node is used as a whole
      * @return a vector that represents the force
      */
-    Vector3 calculateForce(CelestialBody body);
+    Vector3 calculateForce(CelestialBody body, Acceptance acceptance);
 
     /**
      * draws the boundary of each not empty leaf node
@@ -0,0 +1,24 @@
+/**
+ * the explicit first order integration: the force changes the current movement
+ * and the body moves by the new movement (semi-implicit Euler).
+ * it is only stable for small time steps, see LeapfrogIntegrator
+ */
+public class EulerIntegrator implements Integrator {
+
+    private double[] fx = new double[0], fy = new double[0], fz = new double[0];    // reused in every step
+
+    @Override
+    public int step(BodyStore store, ForceSolver solver, double dt) {
+        if(fx.length < store.size()){
+            fx = new double[store.size()]; fy = new double[store.size()]; fz = new double[store.size()];
+        }
+        //update the solver to the new positions of the bodies
+        int newlyExcluded = solver.update(store);
+        solver.calculateForce(store, fx, fy, fz);
+        for(int i=0; i<store.size(); i++){
+            store.kick(i, fx[i], fy[i], fz[i], dt);
+            store.drift(i, dt);
+        }
+        return newlyExcluded;
+    }
+}
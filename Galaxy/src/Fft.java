@@ -0,0 +1,118 @@
+/**
+ * a radix-2 fast Fourier transform of complex data on a cubic grid with a power of two points per dimension, in plain java.
+ * the grid is stored in two arrays (real and imaginary part), the point (x, y, z) has the index (z*m + y)*m + x.
+ * the 3d transform is done as 1d transforms along the lines of one axis after the other,
+ * the lines are distributed over the threads of Parallel.
+ * a transform can be limited to the lines whose other coordinates are below a limit, e.g. if the rest of the grid is zero
+ */
+public final class Fft {
+
+    // the number of lines a thread transforms at once
+    private static final int PARALLEL_GRAIN = 64;
+
+    private final int m;
+    private final double[] cos, sin;    // cos and sin of 2*pi*k/m for k < m/2
+    private final int[] reversed;       // the bit reversal permutation of the indices of a line
+    // the line buffers of each thread, real and imaginary part, kept between the transforms
+    private final ThreadLocal<double[][]> lines;
+
+    /**
+     * creates a transform for a grid with m points per dimension
+     * @param m the number of points, a power of two
+     */
+    public Fft(int m){
+        if(m < 2 || (m & (m-1)) != 0){
+            throw new IllegalArgumentException("the size of the grid has to be a power of two: " + m);
+        }
+        this.m = m;
+        cos = new double[m/2];
+        sin = new double[m/2];
+        for(int k=0; k<m/2; k++){
+            cos[k] = Math.cos(2*Math.PI*k/m);
+            sin[k] = Math.sin(2*Math.PI*k/m);
+        }
+        reversed = new int[m];
+        int bits = Integer.numberOfTrailingZeros(m);
+        for(int i=0; i<m; i++){
+            reversed[i] = Integer.reverse(i) >>> (32 - bits);
+        }
+        lines = ThreadLocal.withInitial(() -> new double[2][m]);
+    }
+
+    /**
+     * returns the number of points per dimension
+     * @return the number of points
+     */
+    public int getSize(){
+        return m;
+    }
+
+    /**
+     * transforms the whole grid along all three axes
+     * @param re the real parts
+     * @param im the imaginary parts
+     * @param inverse true -> the inverse transform, without the factor 1/m^3
+     */
+    public void transform(double[] re, double[] im, boolean inverse){
+        for(int axis=0; axis<3; axis++){
+            transform(re, im, axis, m, m, inverse);
+        }
+    }
+
+    /**
+     * transforms the lines along one axis. only the lines whose other coordinates are below the limits are transformed,
+     * the other coordinates are (y, z) for the x-axis, (x, z) for the y-axis and (x, y) for the z-axis
+     * @param re the real parts
+     * @param im the imaginary parts
+     * @param axis 0 -> x, 1 -> y, 2 -> z
+     * @param limitA the limit of the first other coordinate
+     * @param limitB the limit of the second other coordinate
+     * @param inverse true -> the inverse transform, without the factor 1/m
+     */
+    public void transform(double[] re, double[] im, int axis, int limitA, int limitB, boolean inverse){
+        int stride = axis == 0 ? 1 : axis == 1 ? m : m*m;
+        Parallel.forRange(limitA*limitB, PARALLEL_GRAIN, (from, to) -> {
+            double[][] line = lines.get();
+            double[] lineRe = line[0], lineIm = line[1];
+            for(int l=from; l<to; l++){
+                int a = l % limitA, b = l / limitA;
+                int base;
+                if(axis == 0) base = (b*m + a)*m;
+                else if(axis == 1) base = b*m*m + a;
+                else base = b*m + a;
+                for(int i=0; i<m; i++){
+                    int r = base + reversed[i]*stride;
+                    lineRe[i] = re[r];
+                    lineIm[i] = im[r];
+                }
+                transformLine(lineRe, lineIm, inverse);
+                for(int i=0; i<m; i++){
+                    re[base + i*stride] = lineRe[i];
+                    im[base + i*stride] = lineIm[i];
+                }
+            }
+        });
+    }
+
+    /**
+     * transforms one line in place, the line has to be in bit reversed order
+     */
+    private void transformLine(double[] re, double[] im, boolean inverse){
+        double sign = inverse ? 1 : -1;
+        for(int len=2; len<=m; len<<=1){
+            int half = len/2, step = m/len;
+            for(int start=0; start<m; start+=len){
+                for(int k=0; k<half; k++){
+                    double wr = cos[k*step], wi = sign*sin[k*step];
+                    int i = start + k, j = i + half;
+                    double tr = re[j]*wr - im[j]*wi;
+                    double ti = re[j]*wi + im[j]*wr;
+                    re[j] = re[i] - tr;
+                    im[j] = im[i] - ti;
+                    re[i] += tr;
+                    im[i] += ti;
+                }
+            }
+        }
+    }
+}
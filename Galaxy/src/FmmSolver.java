@@ -0,0 +1,804 @@
+import java.util.Arrays;
+
+/**
+ * calculates the forces with the Fast Multipole Method.
+ * the bodies are sorted by their Morton keys and put into an octree of cells with the octants of Boundary3D.whichOctant,
+ * each cell holds a range of the sorted bodies. the cells are built level by level, so the cells of a level lie
+ * next to each other and each level is handled in parallel. for each cell a multipole expansion of the potential
+ * of its bodies about its centre of gravity is computed bottom-up (P2M, M2M).
+ * the cells are then paired by a dual tree walk: two cells that are far enough apart translate their multipoles
+ * into local expansions of each other (M2L), near leaves are summed up directly (P2P).
+ * the walk is split into jobs for the children of the root and only collects the pairs of cells,
+ * the interactions are done in parallel for each cell, so each thread only writes to its own cells and bodies.
+ * at last the local expansions are shifted down level by level (L2L) and evaluated at the bodies (L2P).
+ *
+ * with Config.ADAPTIVE_BOUNDS the root is the bounding cube of RootBounds, the bodies outside of it (escapers)
+ * are not put into the cells and their attraction is summed up directly. the arrays of the cells are kept between
+ * the iterations and only grow.
+ *
+ * the expansions are Cartesian Taylor series of 1/r up to the order Config.FMM_ORDER.
+ * a term is a multi-index (i, j, k) that stands for x^i*y^j*z^k, the terms are ordered by their order i+j+k
+ */
+public class FmmSolver implements ForceSolver {
+
+    // the number of cells or leaves a task handles at least
+    private static final int PARALLEL_GRAIN = 16;
+    // the jobs of the dual tree walk: the inside of each child of the root and each pair of them
+    private static final int MAX_JOBS = 8*9/2;
+
+    private final Boundary3D area;
+    private final RootBounds rootBounds = new RootBounds();
+    private final MortonKeys mortonKeys = new MortonKeys();
+
+    // the terms of the expansions
+    private final int order, terms;
+    private final int[] termOrder;          // i+j+k of a term
+    private final int[] termPrev, termAxis; // the term that gives this term when multiplied with x (0), y (1) or z (2)
+    private final int[][] termDown;         // termDown[axis][t] the term divided by x, y or z, -1 if not possible
+    private final int[][] termExp;          // termExp[axis][t] the exponent of x, y or z in the term
+    private final int[][][] termIndex;      // the term of a multi-index
+    // the shift of an expansion (M2M, L2L): big = small + diff, coefficient binomial(big, small)
+    private final int[] shiftBig, shiftSmall, shiftDiff;
+    private final double[] shiftCoef;
+    // the translation M2L: L[target] += coef * d[sum] * M[source]
+    private final int[] m2lTarget, m2lSource, m2lSum;
+    private final double[] m2lCoef;
+
+    // the bodies sorted by their Morton keys, followed by the escapers
+    private int bodyCount, escaperCount;
+    private int[] storeIndex = new int[16];
+    private double[] px = new double[16], py = new double[16], pz = new double[16], pm = new double[16];
+    private DoubleArray keyX, keyY, keyZ;   // the positions for the Morton keys, before the sort
+    private int[] gathered = new int[16];   // the index in the store of the bodies before the sort
+    private int[] escapers = new int[16];   // the index in the store of the escapers
+    private int[] slot = new int[16];       // the place of each body of the store in the copies, -1 -> excluded
+    private int[] leafOf = new int[16];     // the leaf of each sorted body
+
+    // the cells, the cells of the level l are [levelStart[l], levelStart[l+1])
+    private Boundary3D root;
+    private int cellCount, levelCount;
+    private final int[] levelStart = new int[MortonKeys.BITS + 2];
+    private int[] from = new int[16], to = new int[16];
+    private int[] parent = new int[16], firstChild = new int[16], childCount = new int[16];
+    private double[] bx = new double[16], by = new double[16], bz = new double[16];  // the centre of the cube
+    private double[] cx = new double[16], cy = new double[16], cz = new double[16];  // the centre of gravity
+    private double[] radius = new double[16];   // the distance of the farthest body from the centre
+    private double[] multipole = new double[0], local = new double[0];
+    private int[] leaves = new int[16];
+    private int leafCount;
+    // true -> the local expansions belong to the cells of the last update
+    private boolean localValid;
+
+    // the pairs of cells found by the jobs of the walk
+    private final Pairs[] walks = new Pairs[MAX_JOBS];
+    private final int[] jobA = new int[MAX_JOBS], jobB = new int[MAX_JOBS];
+    // the partners of each cell: the far cells of c are farList[farStart[c], farStart[c+1]), the same for the near leaves
+    private int[] farStart = new int[17], nearStart = new int[17], next = new int[17];
+    private int[] farList = new int[16], nearList = new int[16];
+
+    // the buffers of each thread, kept between the iterations
+    private final ThreadLocal<Buffers> buffers = ThreadLocal.withInitial(Buffers::new);
+
+    /**
+     * creates a new FMM solver for a given area in space
+     * @param area the given area, bodies outside of it are excluded unless Config.ADAPTIVE_BOUNDS is set
+     * @param expectedBodies the number of bodies that will probably be added
+     */
+    public FmmSolver(Boundary3D area, int expectedBodies){
+        this.area = area;
+        this.order = Config.FMM_ORDER;
+        this.terms = (order+1)*(order+2)*(order+3)/6;
+        termOrder = new int[terms];
+        termPrev = new int[terms];
+        termAxis = new int[terms];
+        termDown = new int[3][terms];
+        termExp = new int[3][terms];
+        termIndex = new int[order+1][order+1][order+1];
+        int t = 0;
+        for(int n=0; n<=order; n++){
+            for(int i=n; i>=0; i--){
+                for(int j=n-i; j>=0; j--){
+                    int k = n-i-j;
+                    termIndex[i][j][k] = t;
+                    termOrder[t] = n;
+                    termExp[0][t] = i; termExp[1][t] = j; termExp[2][t] = k;
+                    t++;
+                }
+            }
+        }
+        for(t=0; t<terms; t++){
+            int i = termExp[0][t], j = termExp[1][t], k = termExp[2][t];
+            termDown[0][t] = i > 0 ? termIndex[i-1][j][k] : -1;
+            termDown[1][t] = j > 0 ? termIndex[i][j-1][k] : -1;
+            termDown[2][t] = k > 0 ? termIndex[i][j][k-1] : -1;
+            termAxis[t] = i > 0 ? 0 : j > 0 ? 1 : 2;
+            termPrev[t] = t == 0 ? -1 : termDown[termAxis[t]][t];
+        }
+
+        // the shifts: all pairs small <= big
+        int shifts = 0;
+        for(int big=0; big<terms; big++){
+            for(int small=0; small<terms; small++){
+                if(lessOrEqual(small, big)) shifts++;
+            }
+        }
+        shiftBig = new int[shifts]; shiftSmall = new int[shifts]; shiftDiff = new int[shifts];
+        shiftCoef = new double[shifts];
+        int s = 0;
+        for(int big=0; big<terms; big++){
+            for(int small=0; small<terms; small++){
+                if(!lessOrEqual(small, big)) continue;
+                shiftBig[s] = big;
+                shiftSmall[s] = small;
+                shiftDiff[s] = termIndex[termExp[0][big]-termExp[0][small]][termExp[1][big]-termExp[1][small]][termExp[2][big]-termExp[2][small]];
+                shiftCoef[s] = binomial(termExp[0][big], termExp[0][small])
+                        *binomial(termExp[1][big], termExp[1][small])
+                        *binomial(termExp[2][big], termExp[2][small]);
+                s++;
+            }
+        }
+
+        // the translations: all pairs (target, source) with order(target)+order(source) <= order
+        int translations = 0;
+        for(int a=0; a<terms; a++){
+            for(int b=0; b<terms; b++){
+                if(termOrder[a] + termOrder[b] <= order) translations++;
+            }
+        }
+        m2lTarget = new int[translations]; m2lSource = new int[translations]; m2lSum = new int[translations];
+        m2lCoef = new double[translations];
+        int m = 0;
+        for(int a=0; a<terms; a++){
+            for(int b=0; b<terms; b++){
+                if(termOrder[a] + termOrder[b] > order) continue;
+                int i = termExp[0][a]+termExp[0][b], j = termExp[1][a]+termExp[1][b], k = termExp[2][a]+termExp[2][b];
+                m2lTarget[m] = a;
+                m2lSource[m] = b;
+                m2lSum[m] = termIndex[i][j][k];
+                m2lCoef[m] = (termOrder[b] % 2 == 0 ? 1 : -1)
+                        *binomial(i, termExp[0][a])*binomial(j, termExp[1][a])*binomial(k, termExp[2][a]);
+                m++;
+            }
+        }
+        for(int j=0; j<walks.length; j++){
+            walks[j] = new Pairs();
+        }
+        allocateBodies(Math.max(expectedBodies, 1));
+    }
+
+    /**
+     * sorts the bodies of the store that are not excluded by their Morton keys, builds the cells,
+     * computes the multipole expansions and pairs the cells.
+     * with Config.ADAPTIVE_BOUNDS the bodies outside of the bounding cube become escapers,
+     * otherwise bodies outside of the area are excluded
+     * @param store the store with the bodies
+     * @return the number of bodies that were excluded by this call
+     */
+    @Override
+    public int update(BodyStore store) {
+        int newlyExcluded = 0;
+        if(store.size() > storeIndex.length){
+            allocateBodies(Math.max(store.size(), 2*storeIndex.length));
+        }
+        Boundary3D bounds = Config.ADAPTIVE_BOUNDS ? rootBounds.compute(store, area) : area;
+        int n = 0, e = 0;
+        for(int i=0; i<store.size(); i++){
+            if(store.isExcluded(i)) continue;
+            double x = store.getX(i), y = store.getY(i), z = store.getZ(i);
+            if(bounds.contains(x, y, z)){
+                keyX.set(n, x); keyY.set(n, y); keyZ.set(n, z);
+                gathered[n++] = i;
+            } else if(Config.ADAPTIVE_BOUNDS){
+                escapers[e++] = i;
+            } else {
+                store.exclude(i);
+                newlyExcluded++;
+            }
+        }
+        bodyCount = n;
+        escaperCount = e;
+        localValid = false;
+        Arrays.fill(slot, 0, store.size(), -1);
+        for(int k=0; k<e; k++){
+            int i = escapers[k];
+            slot[i] = n+k;
+            storeIndex[n+k] = i;
+            px[n+k] = store.getX(i); py[n+k] = store.getY(i); pz[n+k] = store.getZ(i);
+            pm[n+k] = store.getMass(i);
+        }
+        cellCount = 0;
+        levelCount = 0;
+        leafCount = 0;
+        if(n == 0) return newlyExcluded;
+        root = bounds;
+        mortonKeys.compute(root, keyX, keyY, keyZ, n);
+        mortonKeys.sort();
+        for(int k=0; k<n; k++){
+            int i = gathered[mortonKeys.getIndex(k)];
+            storeIndex[k] = i;
+            slot[i] = k;
+            px[k] = store.getX(i); py[k] = store.getY(i); pz[k] = store.getZ(i);
+            pm[k] = store.getMass(i);
+        }
+        build();
+        if(multipole.length < cellCount*terms){
+            multipole = new double[from.length*terms];
+            local = new double[from.length*terms];
+        }
+        // the children of a cell are on the next level, so the expansions can be computed level by level bottom-up
+        for(int level=levelCount-1; level>=0; level--){
+            int start = levelStart[level];
+            Parallel.forRange(levelStart[level+1] - start, PARALLEL_GRAIN, (first, last) -> {
+                double[] pow = buffers.get().power;
+                for(int c=start+first; c<start+last; c++){
+                    if(childCount[c] == 0){
+                        multipoleOfLeaf(c, pow);
+                    } else {
+                        multipoleOfChildren(c, pow);
+                    }
+                }
+            });
+        }
+        walk();
+        return newlyExcluded;
+    }
+
+    /**
+     * calculates the force for each body in the store, the index in the result is the index in the store.
+     * excluded bodies get a zero force
+     * @param store the store with the bodies
+     * @return a vector array with the calculated forces
+     */
+    @Override
+    public Vector3[] calculateForce(BodyStore store) {
+        int n = store.size();
+        double[] fx = new double[n], fy = new double[n], fz = new double[n];
+        calculateForce(store, fx, fy, fz);
+        return ForceSolver.toVectors(fx, fy, fz, n);
+    }
+
+    /**
+     * calculates the force for each body in the store and writes it into the arrays at the index of the body.
+     * excluded bodies get a zero force
+     * @param store the store with the bodies
+     * @param fx the x-components of the forces, at least store.size() entries
+     * @param fy the y-components of the forces
+     * @param fz the z-components of the forces
+     */
+    @Override
+    public void calculateForce(BodyStore store, double[] fx, double[] fy, double[] fz) {
+        // the excluded bodies are not in the cells
+        Arrays.fill(fx, 0, store.size(), 0);
+        Arrays.fill(fy, 0, store.size(), 0);
+        Arrays.fill(fz, 0, store.size(), 0);
+        prepareLocal();
+        Parallel.forRange(leafCount, PARALLEL_GRAIN, (first, last) -> {
+            Buffers b = buffers.get();
+            for(int l=first; l<last; l++){
+                int cell = leaves[l];
+                for(int k=from[cell]; k<to[cell]; k++){
+                    evaluateBody(k, cell, b, fx, fy, fz);
+                }
+            }
+        });
+        Parallel.forRange(escaperCount, 1, (first, last) -> {
+            Buffers b = buffers.get();
+            for(int k=bodyCount+first; k<bodyCount+last; k++){
+                evaluateEscaper(k, b, fx, fy, fz);
+            }
+        });
+    }
+
+    /**
+     * calculates the force for some bodies of the store and writes it into the arrays at the index of the body,
+     * the entries of the other bodies are not changed. excluded bodies get a zero force.
+     * the local expansions are computed once after each update, only L2P and P2P are limited to the bodies
+     * @param store the store with the bodies
+     * @param indices the indices of the bodies in the store
+     * @param n the number of indices
+     * @param fx the x-components of the forces, at least store.size() entries
+     * @param fy the y-components of the forces
+     * @param fz the z-components of the forces
+     */
+    @Override
+    public void calculateForce(BodyStore store, int[] indices, int n, double[] fx, double[] fy, double[] fz) {
+        prepareLocal();
+        Parallel.forRange(n, PARALLEL_GRAIN, (first, last) -> {
+            Buffers b = buffers.get();
+            for(int s=first; s<last; s++){
+                int i = indices[s], k = slot[i];
+                if(k < 0){
+                    fx[i] = 0; fy[i] = 0; fz[i] = 0;
+                } else if(k < bodyCount){
+                    evaluateBody(k, leafOf[k], b, fx, fy, fz);
+                } else {
+                    evaluateEscaper(k, b, fx, fy, fz);
+                }
+            }
+        });
+    }
+
+    /**
+     * computes the local expansions of the cells if they don't belong to the cells of the last update yet:
+     * the translations of the far cells (M2L) and then the shifts level by level top-down (L2L)
+     */
+    private void prepareLocal(){
+        if(localValid || bodyCount == 0) return;
+        Parallel.forRange(cellCount, PARALLEL_GRAIN, (first, last) -> {
+            double[] d = buffers.get().derivative;
+            for(int c=first; c<last; c++){
+                translate(c, d);
+            }
+        });
+        // the parents are on the level above, so the local expansions can be shifted level by level top-down
+        for(int level=1; level<levelCount; level++){
+            int start = levelStart[level];
+            Parallel.forRange(levelStart[level+1] - start, PARALLEL_GRAIN, (first, last) -> {
+                double[] pow = buffers.get().power;
+                for(int c=start+first; c<start+last; c++){
+                    shiftLocal(parent[c], c, pow);
+                }
+            });
+        }
+        localValid = true;
+    }
+
+    /**
+     * draws the boundary of each leaf cell
+     */
+    @Override
+    public void show() {
+        for(int level=0; level<levelCount; level++){
+            double scale = 1.0/(1 << level);
+            for(int c=levelStart[level]; c<levelStart[level+1]; c++){
+                if(childCount[c] > 0) continue;
+                new Boundary3D(bx[c], by[c], bz[c], root.getL()*scale, root.getW()*scale, root.getH()*scale)
+                        .show(java.awt.Color.GRAY);
+            }
+        }
+    }
+
+    /**
+     * builds the cells level by level: the cells of a level count their octants in parallel,
+     * get the place of their children from the counts and then create their children in parallel.
+     * a cell is split by the octants of the Morton keys until it is small enough
+     */
+    private void build(){
+        ensureCells(1);
+        from[0] = 0;
+        to[0] = bodyCount;
+        parent[0] = -1;
+        bx[0] = root.getX(); by[0] = root.getY(); bz[0] = root.getZ();
+        int start = 0, end = 1;
+        while(start < end){
+            int level = levelCount, first = start;
+            levelStart[levelCount++] = start;
+            Parallel.forRange(end - start, PARALLEL_GRAIN, (a, b) -> {
+                for(int c=first+a; c<first+b; c++){
+                    childCount[c] = countChildren(c, level);
+                }
+            });
+            int cells = end;
+            for(int c=start; c<end; c++){
+                firstChild[c] = cells;
+                cells += childCount[c];
+            }
+            ensureCells(cells);
+            Parallel.forRange(end - start, PARALLEL_GRAIN, (a, b) -> {
+                for(int c=first+a; c<first+b; c++){
+                    split(c, level);
+                }
+            });
+            start = end;
+            end = cells;
+        }
+        levelStart[levelCount] = end;
+        cellCount = end;
+        for(int c=0; c<cellCount; c++){
+            if(childCount[c] > 0) continue;
+            if(leafCount == leaves.length){
+                leaves = Arrays.copyOf(leaves, 2*leafCount);
+            }
+            leaves[leafCount++] = c;
+            Arrays.fill(leafOf, from[c], to[c], c);
+        }
+    }
+
+    /**
+     * returns the number of children of a cell, 0 if it is small enough to be a leaf
+     */
+    private int countChildren(int cell, int level){
+        if(to[cell] - from[cell] <= Config.FMM_LEAF_SIZE || level >= MortonKeys.BITS) return 0;
+        int count = 0;
+        for(int start=from[cell]; start<to[cell]; count++){
+            start = mortonKeys.endOfOctant(start, to[cell], level, MortonKeys.octant(mortonKeys.getKey(start), level));
+        }
+        return count;
+    }
+
+    /**
+     * creates the children of a cell for the octants of its body range, the children get the places from firstChild on
+     */
+    private void split(int cell, int level){
+        if(childCount[cell] == 0) return;
+        double scale = 1.0/(4 << level);
+        double ql = root.getL()*scale, qw = root.getW()*scale, qh = root.getH()*scale;
+        int child = firstChild[cell];
+        for(int start=from[cell]; start<to[cell]; child++){
+            int oct = MortonKeys.octant(mortonKeys.getKey(start), level);
+            int end = mortonKeys.endOfOctant(start, to[cell], level, oct);
+            from[child] = start;
+            to[child] = end;
+            parent[child] = cell;
+            // the octants like in Boundary3D.split: bit 0 -> +x, bit 1 -> -z, bit 2 -> +y
+            bx[child] = bx[cell] + ((oct & 1) != 0 ? ql : -ql);
+            by[child] = by[cell] + ((oct & 4) != 0 ? qw : -qw);
+            bz[child] = bz[cell] + ((oct & 2) != 0 ? -qh : qh);
+            start = end;
+        }
+    }
+
+    /**
+     * computes the centre of gravity, the radius and the multipole of a leaf from its bodies (P2M)
+     * @param pow a buffer for the powers of the distance
+     */
+    private void multipoleOfLeaf(int cell, double[] pow){
+        double m = 0, x = 0, y = 0, z = 0;
+        for(int k=from[cell]; k<to[cell]; k++){
+            m += pm[k];
+            x += px[k]*pm[k]; y += py[k]*pm[k]; z += pz[k]*pm[k];
+        }
+        setCentre(cell, m, x, y, z);
+        double r = 0;
+        int base = cell*terms;
+        Arrays.fill(multipole, base, base+terms, 0);
+        for(int k=from[cell]; k<to[cell]; k++){
+            double dx = px[k]-cx[cell], dy = py[k]-cy[cell], dz = pz[k]-cz[cell];
+            r = Math.max(r, Math.sqrt(dx*dx + dy*dy + dz*dz));
+            powers(dx, dy, dz, pow);
+            for(int t=0; t<terms; t++){
+                multipole[base+t] += pm[k]*pow[t];
+            }
+        }
+        radius[cell] = r;
+    }
+
+    /**
+     * computes the centre of gravity, the radius and the multipole of a cell
+     * by shifting the multipoles of its children to its centre (M2M)
+     * @param pow a buffer for the powers of the distance
+     */
+    private void multipoleOfChildren(int cell, double[] pow){
+        double m = 0, x = 0, y = 0, z = 0;
+        for(int c=firstChild[cell]; c<firstChild[cell]+childCount[cell]; c++){
+            double cm = multipole[c*terms];
+            m += cm;
+            x += cx[c]*cm; y += cy[c]*cm; z += cz[c]*cm;
+        }
+        setCentre(cell, m, x, y, z);
+        double r = 0;
+        int base = cell*terms;
+        Arrays.fill(multipole, base, base+terms, 0);
+        for(int c=firstChild[cell]; c<firstChild[cell]+childCount[cell]; c++){
+            double dx = cx[c]-cx[cell], dy = cy[c]-cy[cell], dz = cz[c]-cz[cell];
+            r = Math.max(r, Math.sqrt(dx*dx + dy*dy + dz*dz) + radius[c]);
+            powers(dx, dy, dz, pow);
+            int childBase = c*terms;
+            for(int s=0; s<shiftBig.length; s++){
+                multipole[base+shiftBig[s]] += shiftCoef[s]*pow[shiftDiff[s]]*multipole[childBase+shiftSmall[s]];
+            }
+        }
+        radius[cell] = r;
+    }
+
+    private void setCentre(int cell, double m, double x, double y, double z){
+        if(m == 0){
+            cx[cell] = bx[cell]; cy[cell] = by[cell]; cz[cell] = bz[cell];
+        } else {
+            cx[cell] = x/m; cy[cell] = y/m; cz[cell] = z/m;
+        }
+    }
+
+    /**
+     * pairs the cells with the dual tree walk. the jobs below the root are walked in parallel,
+     * then the pairs are sorted by their cells, so each cell knows its far cells and each leaf its near leaves
+     */
+    private void walk(){
+        int jobs = 0;
+        if(childCount[0] == 0){
+            jobA[jobs] = 0; jobB[jobs++] = 0;
+        } else {
+            int end = firstChild[0] + childCount[0];
+            for(int a=firstChild[0]; a<end; a++){
+                for(int b=a; b<end; b++){
+                    jobA[jobs] = a; jobB[jobs++] = b;
+                }
+            }
+        }
+        Parallel.forRange(jobs, 1, (first, last) -> {
+            for(int j=first; j<last; j++){
+                Pairs pairs = walks[j];
+                pairs.farCount = 0;
+                pairs.nearCount = 0;
+                if(jobA[j] == jobB[j]){
+                    interact(jobA[j], pairs);
+                } else {
+                    interact(jobA[j], jobB[j], pairs);
+                }
+            }
+        });
+        farList = group(jobs, false, farStart, farList);
+        nearList = group(jobs, true, nearStart, nearList);
+    }
+
+    /**
+     * sorts the pairs of the jobs by their cells, the partners of the cell c are list[start[c], start[c+1])
+     * @param jobs the number of jobs
+     * @param near true -> the near pairs, false -> the far pairs
+     * @param start the start of the partners of each cell
+     * @param list the partners
+     * @return the partners, a bigger array if list was too small
+     */
+    private int[] group(int jobs, boolean near, int[] start, int[] list){
+        Arrays.fill(start, 0, cellCount+1, 0);
+        int entries = 0;
+        for(int j=0; j<jobs; j++){
+            int[] pairs = near ? walks[j].near : walks[j].far;
+            int count = near ? walks[j].nearCount : walks[j].farCount;
+            for(int k=0; k<count; k++){
+                start[pairs[k]+1]++;
+            }
+            entries += count;
+        }
+        for(int c=0; c<cellCount; c++){
+            start[c+1] += start[c];
+        }
+        if(list.length < entries){
+            list = new int[Math.max(entries, 2*list.length)];
+        }
+        System.arraycopy(start, 0, next, 0, cellCount);
+        for(int j=0; j<jobs; j++){
+            int[] pairs = near ? walks[j].near : walks[j].far;
+            int count = near ? walks[j].nearCount : walks[j].farCount;
+            for(int k=0; k<count; k+=2){
+                int a = pairs[k], b = pairs[k+1];
+                list[next[a]++] = b;
+                list[next[b]++] = a;
+            }
+        }
+        return list;
+    }
+
+    /**
+     * collects all interactions between the bodies of a cell, the bodies of a leaf interact in evaluateLeaf
+     */
+    private void interact(int cell, Pairs pairs){
+        if(childCount[cell] == 0) return;
+        int end = firstChild[cell] + childCount[cell];
+        for(int a=firstChild[cell]; a<end; a++){
+            interact(a, pairs);
+            for(int b=a+1; b<end; b++){
+                interact(a, b, pairs);
+            }
+        }
+    }
+
+    /**
+     * collects all interactions between the bodies of two different cells:
+     * if they are far enough apart their expansions interact, if both are leaves their bodies interact directly,
+     * otherwise the bigger cell is split
+     */
+    private void interact(int a, int b, Pairs pairs){
+        double dx = cx[a]-cx[b], dy = cy[a]-cy[b], dz = cz[a]-cz[b];
+        double r = Math.sqrt(dx*dx + dy*dy + dz*dz);
+        if(radius[a] + radius[b] < Config.FMM_THETA*r){
+            pairs.far = Pairs.add(pairs.far, pairs.farCount, a, b);
+            pairs.farCount += 2;
+            return;
+        }
+        if(childCount[a] == 0 && childCount[b] == 0){
+            pairs.near = Pairs.add(pairs.near, pairs.nearCount, a, b);
+            pairs.nearCount += 2;
+            return;
+        }
+        if(childCount[b] == 0 || (childCount[a] > 0 && radius[a] >= radius[b])){
+            for(int c=firstChild[a]; c<firstChild[a]+childCount[a]; c++){
+                interact(c, b, pairs);
+            }
+        } else {
+            for(int c=firstChild[b]; c<firstChild[b]+childCount[b]; c++){
+                interact(a, c, pairs);
+            }
+        }
+    }
+
+    /**
+     * sets the local expansion of a cell to the translated multipoles of its far cells (M2L)
+     * @param d a buffer for the derivatives
+     */
+    private void translate(int cell, double[] d){
+        int base = cell*terms;
+        Arrays.fill(local, base, base+terms, 0);
+        for(int s=farStart[cell]; s<farStart[cell+1]; s++){
+            int source = farList[s];
+            derivatives(cx[cell]-cx[source], cy[cell]-cy[source], cz[cell]-cz[source], d);
+            int sourceBase = source*terms;
+            for(int m=0; m<m2lTarget.length; m++){
+                local[base+m2lTarget[m]] += m2lCoef[m]*d[m2lSum[m]]*multipole[sourceBase+m2lSource[m]];
+            }
+        }
+    }
+
+    /**
+     * shifts the local expansion of a cell to the centre of its child and adds it there (L2L)
+     * @param pow a buffer for the powers of the distance
+     */
+    private void shiftLocal(int parent, int child, double[] pow){
+        powers(cx[child]-cx[parent], cy[child]-cy[parent], cz[child]-cz[parent], pow);
+        int base = parent*terms, childBase = child*terms;
+        for(int s=0; s<shiftBig.length; s++){
+            local[childBase+shiftSmall[s]] += shiftCoef[s]*pow[shiftDiff[s]]*local[base+shiftBig[s]];
+        }
+    }
+
+    /**
+     * calculates the force on a sorted body: the gradient of the local expansion of its leaf (L2P)
+     * and the attraction of the bodies of the leaf, its near leaves and the escapers (P2P)
+     * @param k the sorted body
+     * @param cell the leaf of the body
+     */
+    private void evaluateBody(int k, int cell, Buffers b, double[] fx, double[] fy, double[] fz){
+        int base = cell*terms;
+        double[] pow = b.power, acc = b.acc;
+        powers(px[k]-cx[cell], py[k]-cy[cell], pz[k]-cz[cell], pow);
+        double gx = 0, gy = 0, gz = 0;
+        for(int t=1; t<terms; t++){
+            double l = local[base+t];
+            if(termDown[0][t] >= 0) gx += l*termExp[0][t]*pow[termDown[0][t]];
+            if(termDown[1][t] >= 0) gy += l*termExp[1][t]*pow[termDown[1][t]];
+            if(termDown[2][t] >= 0) gz += l*termExp[2][t]*pow[termDown[2][t]];
+        }
+        acc[0] = gx; acc[1] = gy; acc[2] = gz;
+        attraction(k, from[cell], to[cell], acc);
+        for(int s=nearStart[cell]; s<nearStart[cell+1]; s++){
+            int other = nearList[s];
+            attraction(k, from[other], to[other], acc);
+        }
+        attraction(k, bodyCount, bodyCount+escaperCount, acc);
+        double f = Config.G*pm[k];
+        fx[storeIndex[k]] = acc[0]*f; fy[storeIndex[k]] = acc[1]*f; fz[storeIndex[k]] = acc[2]*f;
+    }
+
+    /**
+     * calculates the force on an escaper, it is attracted by all bodies directly
+     * @param k the place of the escaper after the sorted bodies
+     */
+    private void evaluateEscaper(int k, Buffers b, double[] fx, double[] fy, double[] fz){
+        double[] acc = b.acc;
+        Arrays.fill(acc, 0);
+        attraction(k, 0, bodyCount+escaperCount, acc);
+        double f = Config.G*pm[k];
+        fx[storeIndex[k]] = acc[0]*f; fy[storeIndex[k]] = acc[1]*f; fz[storeIndex[k]] = acc[2]*f;
+    }
+
+    /**
+     * adds the attraction of the bodies [first, last) to acc, a body doesn't attract itself
+     * @param k the attracted body
+     */
+    private void attraction(int k, int first, int last, double[] acc){
+        double x = px[k], y = py[k], z = pz[k];
+        double sx = 0, sy = 0, sz = 0;
+        for(int j=first; j<last; j++){
+            double dx = px[j]-x, dy = py[j]-y, dz = pz[j]-z;
+            double r2 = dx*dx + dy*dy + dz*dz;
+            if(r2 == 0) continue;
+            double s = GravityKernel.inverseCube(r2)*pm[j];
+            sx += dx*s; sy += dy*s; sz += dz*s;
+        }
+        acc[0] += sx; acc[1] += sy; acc[2] += sz;
+    }
+
+    /**
+     * computes x^i*y^j*z^k for all terms
+     */
+    private void powers(double x, double y, double z, double[] pow){
+        pow[0] = 1;
+        for(int t=1; t<terms; t++){
+            int axis = termAxis[t];
+            pow[t] = pow[termPrev[t]]*(axis == 0 ? x : axis == 1 ? y : z);
+        }
+    }
+
+    /**
+     * computes the Taylor coefficients D^t(1/r)/t! of all terms at (x, y, z), with the recurrence
+     * n*r^2*d[t] = -(2n-1)*sum(x_i*d[t-e_i]) - (n-1)*sum(d[t-2e_i]) where n is the order of t
+     */
+    private void derivatives(double x, double y, double z, double[] d){
+        double r2 = x*x + y*y + z*z;
+        d[0] = 1/Math.sqrt(r2);
+        for(int t=1; t<terms; t++){
+            int n = termOrder[t];
+            double first = 0, second = 0;
+            for(int axis=0; axis<3; axis++){
+                int down = termDown[axis][t];
+                if(down < 0) continue;
+                first += (axis == 0 ? x : axis == 1 ? y : z)*d[down];
+                int down2 = termDown[axis][down];
+                if(down2 >= 0) second += d[down2];
+            }
+            d[t] = -((2*n-1)*first + (n-1)*second)/(n*r2);
+        }
+    }
+
+    private boolean lessOrEqual(int small, int big){
+        return termExp[0][small] <= termExp[0][big] && termExp[1][small] <= termExp[1][big] && termExp[2][small] <= termExp[2][big];
+    }
+
+    private static double binomial(int n, int k){
+        double b = 1;
+        for(int i=1; i<=k; i++){
+            b = b*(n-k+i)/i;
+        }
+        return b;
+    }
+
+    /**
+     * makes room for at least the given number of cells
+     */
+    private void ensureCells(int cells){
+        if(cells <= from.length) return;
+        int capacity = Math.max(cells, 2*from.length);
+        from = Arrays.copyOf(from, capacity); to = Arrays.copyOf(to, capacity);
+        parent = Arrays.copyOf(parent, capacity);
+        firstChild = Arrays.copyOf(firstChild, capacity); childCount = Arrays.copyOf(childCount, capacity);
+        bx = Arrays.copyOf(bx, capacity); by = Arrays.copyOf(by, capacity); bz = Arrays.copyOf(bz, capacity);
+        cx = Arrays.copyOf(cx, capacity); cy = Arrays.copyOf(cy, capacity); cz = Arrays.copyOf(cz, capacity);
+        radius = Arrays.copyOf(radius, capacity);
+        farStart = new int[capacity+1]; nearStart = new int[capacity+1]; next = new int[capacity+1];
+    }
+
+    /**
+     * resizes the body arrays
+     */
+    private void allocateBodies(int capacity){
+        storeIndex = new int[capacity];
+        gathered = new int[capacity];
+        escapers = new int[capacity];
+        slot = new int[capacity];
+        leafOf = new int[capacity];
+        px = new double[capacity]; py = new double[capacity]; pz = new double[capacity];
+        pm = new double[capacity];
+        if(keyX != null){
+            keyX.free(); keyY.free(); keyZ.free();
+        }
+        keyX = DoubleArray.allocate(capacity); keyY = DoubleArray.allocate(capacity); keyZ = DoubleArray.allocate(capacity);
+    }
+
+    /**
+     * the pairs of cells that a job of the walk found, 2 entries per pair
+     */
+    private static final class Pairs {
+        int[] far = new int[64], near = new int[64];
+        int farCount, nearCount;
+
+        /**
+         * puts a pair at the given place, the array grows if it is full
+         * @return the array with the pair
+         */
+        static int[] add(int[] pairs, int count, int a, int b){
+            if(count + 2 > pairs.length){
+                pairs = Arrays.copyOf(pairs, 2*pairs.length);
+            }
+            pairs[count] = a;
+            pairs[count+1] = b;
+            return pairs;
+        }
+    }
+
+    /**
+     * the buffers of a thread for the powers, the derivatives and the attraction of a body
+     */
+    private final class Buffers {
+        final double[] power = new double[terms], derivative = new double[terms], acc = new double[3];
+    }
+}
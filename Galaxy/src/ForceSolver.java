@@ -0,0 +1,99 @@
+/**
+ * calculates the gravitational forces between the bodies of a store
+ */
+public interface ForceSolver {
+
+    /**
+     * updates the solver to the current positions of the bodies in the store
+     * and returns the number of newly excluded bodies.
+     * bodies that are outside of the area of the solver are excluded in the store
+     * @param store the store with the bodies
+     * @return the number of bodies that were excluded by this call
+     */
+    int update(BodyStore store);
+
+    /**
+     * calculates the force for each body in the store, the index in the result is the index in the store.
+     * excluded bodies get a zero force
+     * @param store the store with the bodies
+     * @return a vector array with the calculated forces
+     */
+    Vector3[] calculateForce(BodyStore store);
+
+    /**
+     * calculates the force for some bodies of the store, e.g. the bodies whose time step ends.
+     * excluded bodies get a zero force. by default the forces of all bodies are calculated
+     * @param store the store with the bodies
+     * @param indices the indices of the bodies in the store
+     * @param n the number of indices
+     * @return a vector array with the calculated forces, the force on the body indices[k] has the index k
+     */
+    default Vector3[] calculateForce(BodyStore store, int[] indices, int n){
+        Vector3[] all = calculateForce(store);
+        Vector3[] forceList = new Vector3[n];
+        for(int k=0; k<n; k++){
+            forceList[k] = all[indices[k]];
+        }
+        return forceList;
+    }
+
+    /**
+     * calculates the force for each body in the store and writes it into arrays of the caller at the index of the body,
+     * so the arrays can be reused in every iteration. excluded bodies get a zero force.
+     * by default the forces are copied from calculateForce(store)
+     * @param store the store with the bodies
+     * @param fx the x-components of the forces, at least store.size() entries
+     * @param fy the y-components of the forces
+     * @param fz the z-components of the forces
+     */
+    default void calculateForce(BodyStore store, double[] fx, double[] fy, double[] fz){
+        Vector3[] forceList = calculateForce(store);
+        for(int i=0; i<forceList.length; i++){
+            fx[i] = forceList[i].getX();
+            fy[i] = forceList[i].getY();
+            fz[i] = forceList[i].getZ();
+        }
+    }
+
+    /**
+     * calculates the force for some bodies of the store and writes it into arrays of the caller at the index of the body,
+     * the entries of the other bodies are not changed. excluded bodies get a zero force.
+     * by default the forces are copied from calculateForce(store, indices, n)
+     * @param store the store with the bodies
+     * @param indices the indices of the bodies in the store
+     * @param n the number of indices
+     * @param fx the x-components of the forces, at least store.size() entries
+     * @param fy the y-components of the forces
+     * @param fz the z-components of the forces
+     */
+    default void calculateForce(BodyStore store, int[] indices, int n, double[] fx, double[] fy, double[] fz){
+        Vector3[] forceList = calculateForce(store, indices, n);
+        for(int k=0; k<n; k++){
+            int i = indices[k];
+            fx[i] = forceList[k].getX();
+            fy[i] = forceList[k].getY();
+            fz[i] = forceList[k].getZ();
+        }
+    }
+
+    /**
+     * creates the vectors of forces that were written into arrays
+     * @param fx the x-components of the forces
+     * @param fy the y-components of the forces
+     * @param fz the z-components of the forces
+     * @param n the number of forces
+     * @return a vector array with the forces
+     */
+    static Vector3[] toVectors(double[] fx, double[] fy, double[] fz, int n){
+        Vector3[] forceList = new Vector3[n];
+        for(int i=0; i<n; i++){
+            forceList[i] = new Vector3(fx[i], fy[i], fz[i]);
+        }
+        return forceList;
+    }
+
+    /**
+     * draws the structure the solver uses to calculate the forces
+     */
+    void show();
+}
@@ -0,0 +1,232 @@
+/**
+ * sums up the attraction of a block of sources on one target, the sources are given as primitive arrays.
+ * the result is the sum of m*(p-x)/|p-x|^3 over the sources, it is not yet multiplied with G and the mass of the target.
+ * sources at the position of the target (e.g. the target itself) add nothing.
+ *
+ * the blocked kernel works in two passes: the first pass computes m/r^3 for each source of the block into a buffer.
+ * it has no branches and no dependencies between the sources, so the JIT compiles it to SIMD instructions.
+ * the second pass sums up the attraction. to stay branch free, distances below 1m are treated as 1m.
+ * the gravity is softened according to Config.SOFTENING, the spline kernel has branches and is computed per source.
+ * the scalar kernel computes each source like the rest of the simulation does,
+ * it is used if Config.BLOCKED_KERNEL is off and to compare the results
+ */
+public final class GravityKernel {
+
+    // the smallest squared distance of the blocked kernel, this keeps m/r^3 finite for a source at the target
+    private static final double MIN_DISTANCE2 = 1;
+    // the squared softening length of the Plummer kernel, 0 if it is not used
+    private static final double PLUMMER_EPSILON2 =
+            Config.SOFTENING == SofteningType.PLUMMER ? Config.SOFTENING_LENGTH*Config.SOFTENING_LENGTH : 0;
+    // the radius of the spline kernel, outside of it the force is Newtonian
+    private static final double SPLINE_RADIUS = 2.8*Config.SOFTENING_LENGTH;
+    // the short-range factor of shortRange() at u^2 = (r/(2rs))^2 = k*SHORT_RANGE_END/SHORT_RANGE_STEPS.
+    // the factor is smooth in u^2, so no square root is needed. it is 0 from the end on,
+    // so a position clamped to the end needs no branch
+    private static final int SHORT_RANGE_STEPS = 8192;
+    private static final double SHORT_RANGE_END = 16;
+    private static final double[] SHORT_RANGE = new double[SHORT_RANGE_STEPS + 2];
+
+    static {
+        for(int k=0; k<SHORT_RANGE_STEPS; k++){
+            double u = Math.sqrt(k*SHORT_RANGE_END/SHORT_RANGE_STEPS);
+            SHORT_RANGE[k] = erfc(u) + 2*u/Math.sqrt(Math.PI)*Math.exp(-u*u);
+        }
+    }
+
+    private GravityKernel(){}
+
+    /**
+     * returns the factor s of the attraction m*s*d of a mass m at the distance vector d,
+     * that is 1/r^3 softened according to Config.SOFTENING.
+     * it is 0 for r2 = 0, so a body doesn't attract itself
+     * @param r2 the squared distance
+     * @return the factor s
+     */
+    public static double inverseCube(double r2){
+        if(r2 == 0) return 0;
+        switch (Config.SOFTENING){
+            case PLUMMER:
+                double p2 = r2 + PLUMMER_EPSILON2;
+                return 1/(p2*Math.sqrt(p2));
+            case SPLINE:
+                if(r2 < SPLINE_RADIUS*SPLINE_RADIUS){
+                    double h = SPLINE_RADIUS;
+                    double u = Math.sqrt(r2)/h;
+                    double h3 = 1/(h*h*h);
+                    if(u < 0.5){
+                        return h3*(10.666666666667 + u*u*(32*u - 38.4));
+                    }
+                    return h3*(21.333333333333 - 48*u + 38.4*u*u - 10.666666666667*u*u*u - 0.066666666667/(u*u*u));
+                }
+                return 1/(r2*Math.sqrt(r2));
+            case NONE:
+            default:
+                return 1/(r2*Math.sqrt(r2));
+        }
+    }
+
+    /**
+     * adds the attraction of the sources [from, to) on the point (x, y, z) to acc,
+     * with the kernel selected in Config.BLOCKED_KERNEL
+     * @param x the x-coordinate of the target
+     * @param y the y-coordinate of the target
+     * @param z the z-coordinate of the target
+     * @param sx the x-coordinates of the sources
+     * @param sy the y-coordinates of the sources
+     * @param sz the z-coordinates of the sources
+     * @param sm the masses of the sources
+     * @param from the first source
+     * @param to the index after the last source
+     * @param buffer a buffer that is at least as long as the source arrays
+     * @param acc the accumulated attraction {x, y, z}
+     */
+    public static void accumulate(double x, double y, double z, double[] sx, double[] sy, double[] sz, double[] sm,
+                                  int from, int to, double[] buffer, double[] acc){
+        if(Config.BLOCKED_KERNEL){
+            accumulateBlocked(x, y, z, sx, sy, sz, sm, from, to, buffer, acc);
+        } else {
+            accumulateScalar(x, y, z, sx, sy, sz, sm, from, to, acc);
+        }
+    }
+
+    /**
+     * adds the short-range part of the attraction of the sources [from, to) on the point (x, y, z) to acc,
+     * that is the attraction multiplied with shortRange(), see TreePmSolver.
+     * like the blocked kernel it works in passes: m/r^3 is computed into the buffer without branches,
+     * then it is multiplied with the factors looked up in the table (this is the only pass that can't use SIMD),
+     * and at last the attraction is summed up
+     * @param splitRadius the radius where the force is split into the short and the long-range part
+     * @param buffer a buffer that is at least as long as the source arrays
+     * @param distances a second buffer of the same length, for the positions in the table
+     */
+    public static void accumulateShortRange(double x, double y, double z, double[] sx, double[] sy, double[] sz, double[] sm,
+                                            int from, int to, double splitRadius, double[] buffer, double[] distances, double[] acc){
+        if(Config.SOFTENING == SofteningType.SPLINE){
+            for(int k=from; k<to; k++){
+                double dx = sx[k]-x, dy = sy[k]-y, dz = sz[k]-z;
+                double r2 = dx*dx + dy*dy + dz*dz;
+                buffer[k] = sm[k]*inverseCube(r2)*shortRange(r2, splitRadius);
+            }
+        } else {
+            double scale = SHORT_RANGE_STEPS/(SHORT_RANGE_END*4*splitRadius*splitRadius);
+            for(int k=from; k<to; k++){
+                double dx = sx[k]-x, dy = sy[k]-y, dz = sz[k]-z;
+                double r2 = dx*dx + dy*dy + dz*dz;
+                double p2 = Math.max(r2 + PLUMMER_EPSILON2, MIN_DISTANCE2);
+                buffer[k] = sm[k]/(p2*Math.sqrt(p2));
+                distances[k] = Math.min(r2*scale, SHORT_RANGE_STEPS);
+            }
+            for(int k=from; k<to; k++){
+                double t = distances[k];
+                int i = (int) t;
+                buffer[k] *= SHORT_RANGE[i] + (t-i)*(SHORT_RANGE[i+1] - SHORT_RANGE[i]);
+            }
+        }
+        double ax = 0, ay = 0, az = 0;
+        for(int k=from; k<to; k++){
+            double s = buffer[k];
+            ax += (sx[k]-x)*s;
+            ay += (sy[k]-y)*s;
+            az += (sz[k]-z)*s;
+        }
+        acc[0] += ax;
+        acc[1] += ay;
+        acc[2] += az;
+    }
+
+    /**
+     * returns the part of the force at the squared distance r2 that is left for the short-range solver
+     * if the potential is split at the radius rs: erfc(u) + 2u/sqrt(pi)*exp(-u^2) with u = r/(2rs).
+     * the rest of the force comes from the potential -erf(u)/r, see PmSolver.
+     * the factor is interpolated from a table over u^2, beyond u = 4 it is below 1e-6 and taken as 0
+     * @param r2 the squared distance
+     * @param splitRadius the split radius rs
+     * @return the factor in [0, 1]
+     */
+    public static double shortRange(double r2, double splitRadius){
+        double t = Math.min(r2/(4*splitRadius*splitRadius)*(SHORT_RANGE_STEPS/SHORT_RANGE_END), SHORT_RANGE_STEPS);
+        int k = (int) t;
+        return SHORT_RANGE[k] + (t-k)*(SHORT_RANGE[k+1] - SHORT_RANGE[k]);
+    }
+
+    /**
+     * the complementary error function for u >= 0, with a relative error below 1.2e-7 (Numerical Recipes, erfcc)
+     * @param u the argument, not negative
+     * @return erfc(u)
+     */
+    public static double erfc(double u){
+        double t = 1/(1 + 0.5*u);
+        return t*Math.exp(-u*u - 1.26551223 + t*(1.00002368 + t*(0.37409196 + t*(0.09678418 + t*(-0.18628806
+                + t*(0.27886807 + t*(-1.13520398 + t*(1.48851587 + t*(-0.82215223 + t*0.17087277)))))))));
+    }
+
+    /**
+     * the blocked kernel, see accumulate()
+     */
+    public static void accumulateBlocked(double x, double y, double z, double[] sx, double[] sy, double[] sz, double[] sm,
+                                         int from, int to, double[] buffer, double[] acc){
+        if(Config.SOFTENING == SofteningType.SPLINE){
+            for(int k=from; k<to; k++){
+                double dx = sx[k]-x, dy = sy[k]-y, dz = sz[k]-z;
+                buffer[k] = sm[k]*inverseCube(dx*dx + dy*dy + dz*dz);
+            }
+        } else {
+            for(int k=from; k<to; k++){
+                double dx = sx[k]-x, dy = sy[k]-y, dz = sz[k]-z;
+                double r2 = Math.max(dx*dx + dy*dy + dz*dz + PLUMMER_EPSILON2, MIN_DISTANCE2);
+                buffer[k] = sm[k]/(r2*Math.sqrt(r2));
+            }
+        }
+        double ax = 0, ay = 0, az = 0;
+        for(int k=from; k<to; k++){
+            double s = buffer[k];
+            ax += (sx[k]-x)*s;
+            ay += (sy[k]-y)*s;
+            az += (sz[k]-z)*s;
+        }
+        acc[0] += ax;
+        acc[1] += ay;
+        acc[2] += az;
+    }
+
+    /**
+     * the scalar kernel, see accumulate()
+     */
+    public static void accumulateScalar(double x, double y, double z, double[] sx, double[] sy, double[] sz, double[] sm,
+                                        int from, int to, double[] acc){
+        for(int k=from; k<to; k++){
+            double dx = sx[k]-x, dy = sy[k]-y, dz = sz[k]-z;
+            double r2 = dx*dx + dy*dy + dz*dz;
+            if(r2 == 0) continue;
+            double s = sm[k]*inverseCube(r2);
+            acc[0] += dx*s;
+            acc[1] += dy*s;
+            acc[2] += dz*s;
+        }
+    }
+
+    /**
+     * adds the quadrupole part of the attraction of a cluster on a target to acc, the monopole is not included.
+     * the quadrupole is the traceless tensor Q = sum m*(3*s*s^T - |s|^2*I) of the cluster about its centre of gravity,
+     * given by its components qxx, qxy, qxz, qyy, qyz (qzz = -qxx-qyy).
+     * the result is -Q*d/r^5 + 5/2*(d*Q*d)*d/r^7, not yet multiplied with G and the mass of the target
+     * @param dx the x-component of the vector from the target to the centre of gravity
+     * @param dy the y-component of the vector
+     * @param dz the z-component of the vector
+     * @param acc the accumulated attraction {x, y, z}
+     */
+    public static void addQuadrupole(double dx, double dy, double dz,
+                                     double qxx, double qxy, double qxz, double qyy, double qyz, double[] acc){
+        double r2 = dx*dx + dy*dy + dz*dz;
+        if(r2 == 0) return;
+        double qzz = -qxx-qyy;
+        double qdx = qxx*dx + qxy*dy + qxz*dz;
+        double qdy = qxy*dx + qyy*dy + qyz*dz;
+        double qdz = qxz*dx + qyz*dy + qzz*dz;
+        double r5 = r2*r2*Math.sqrt(r2);
+        double s = 2.5*(dx*qdx + dy*qdy + dz*qdz)/r2;
+        acc[0] += (s*dx - qdx)/r5;
+        acc[1] += (s*dy - qdy)/r5;
+        acc[2] += (s*dz - qdz)/r5;
+    }
+}
@@ -0,0 +1,145 @@
+/**
+ * the options of a headless run of the Simulation, parsed from the command line:
+ * <pre>
+ * --headless                 runs without a window, StdDraw is never loaded
+ * --steps=N                  stops after N iterations, N > 0
+ * --time=SECONDS             stops when the simulated time reaches SECONDS, SECONDS > 0
+ * --out=DIR                  writes the metrics and snapshots as CSV files into DIR, see CsvSink
+ * --snapshot-every=N         writes a snapshot of the bodies every N iterations (0 -> only at the end)
+ * --metrics-every=N          prints the metrics of every N-th iteration to the console (0 -> only the report)
+ * </pre>
+ * each of the options implies --headless, at least one of --steps and --time is required
+ */
+public final class HeadlessOptions {
+
+    private long steps = Long.MAX_VALUE;
+    private double endTime = Double.POSITIVE_INFINITY;
+    private String outputDirectory;
+    private long snapshotInterval;
+    private long metricsInterval;
+
+    private HeadlessOptions(){}
+
+    /**
+     * parses the command line
+     * @param args the arguments of main
+     * @return the options, null if no argument is given
+     * @throws IllegalArgumentException if an argument is unknown or invalid
+     */
+    public static HeadlessOptions parse(String[] args){
+        if(args.length == 0) return null;
+        HeadlessOptions options = new HeadlessOptions();
+        for(String arg : args){
+            int eq = arg.indexOf('=');
+            String name = eq < 0 ? arg : arg.substring(0, eq);
+            String value = eq < 0 ? null : arg.substring(eq+1);
+            switch (name){
+                case "--headless":
+                    if(value != null) throw new IllegalArgumentException("--headless takes no value: " + arg);
+                    break;
+                case "--steps":
+                    options.steps = parseCount(arg, value, 1);
+                    break;
+                case "--time":
+                    options.endTime = parseTime(arg, value);
+                    break;
+                case "--out":
+                    if(value == null || value.isEmpty()) throw new IllegalArgumentException("--out needs a directory");
+                    options.outputDirectory = value;
+                    break;
+                case "--snapshot-every":
+                    options.snapshotInterval = parseCount(arg, value, 0);
+                    break;
+                case "--metrics-every":
+                    options.metricsInterval = parseCount(arg, value, 0);
+                    break;
+                default:
+                    throw new IllegalArgumentException("unknown argument: " + arg);
+            }
+        }
+        if(options.steps == Long.MAX_VALUE && options.endTime == Double.POSITIVE_INFINITY){
+            throw new IllegalArgumentException("a headless run needs --steps=N or --time=SECONDS");
+        }
+        return options;
+    }
+
+    /**
+     * parses the number of iterations of an option
+     * @param arg the whole argument, for the message
+     * @param value the value after '=', null if there is none
+     * @param min the smallest allowed number
+     * @return the number
+     * @throws IllegalArgumentException if the value is missing, no number or smaller than min
+     */
+    private static long parseCount(String arg, String value, long min){
+        if(value == null) throw new IllegalArgumentException("missing value: " + arg);
+        long count;
+        try {
+            count = Long.parseLong(value);
+        } catch (NumberFormatException e){
+            throw new IllegalArgumentException("invalid value: " + arg);
+        }
+        if(count < min) throw new IllegalArgumentException("the value must be at least " + min + ": " + arg);
+        return count;
+    }
+
+    /**
+     * parses the simulated time of --time
+     * @param arg the whole argument, for the message
+     * @param value the value after '=', null if there is none
+     * @return the time in seconds
+     * @throws IllegalArgumentException if the value is missing, no number or not positive
+     */
+    private static double parseTime(String arg, String value){
+        if(value == null) throw new IllegalArgumentException("missing value: " + arg);
+        double time;
+        try {
+            time = Double.parseDouble(value);
+        } catch (NumberFormatException e){
+            throw new IllegalArgumentException("invalid value: " + arg);
+        }
+        // also rejects NaN
+        if(!(time > 0)) throw new IllegalArgumentException("the time must be positive: " + arg);
+        return time;
+    }
+
+    /**
+     * returns the number of iterations after which the run stops
+     * @return the number of iterations, Long.MAX_VALUE if not limited
+     */
+    public long getSteps(){
+        return steps;
+    }
+
+    /**
+     * returns the simulated time after which the run stops
+     * @return the time in seconds, infinite if not limited
+     */
+    public double getEndTime(){
+        return endTime;
+    }
+
+    /**
+     * returns the directory for the CSV files
+     * @return the directory, null -> no files are written
+     */
+    public String getOutputDirectory(){
+        return outputDirectory;
+    }
+
+    /**
+     * returns the number of iterations between two snapshots
+     * @return the interval, 0 -> only a snapshot at the end
+     */
+    public long getSnapshotInterval(){
+        return snapshotInterval;
+    }
+
+    /**
+     * returns the number of iterations between two metrics on the console
+     * @return the interval, 0 -> only the report at the end
+     */
+    public long getMetricsInterval(){
+        return metricsInterval;
+    }
+}
@@ -0,0 +1,16 @@
+/**
+ * advances the bodies of a store in time, the forces are calculated by a ForceSolver
+ */
+public interface Integrator {
+
+    /**
+     * advances all bodies of the store by one time step.
+     * the solver is updated to the positions of the bodies before the forces are calculated,
+     * bodies that leave the area of the solver are excluded
+     * @param store the store with the bodies
+     * @param solver the solver used to calculate the forces
+     * @param dt the time step in seconds
+     * @return the number of bodies that were excluded during this step
+     */
+    int step(BodyStore store, ForceSolver solver, double dt);
+}
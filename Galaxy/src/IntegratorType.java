@@ -0,0 +1,19 @@
+/**
+ * the available integrations of the movement of the bodies
+ */
+public enum IntegratorType {
+    /**
+     * first order, only stable for small time steps, see EulerIntegrator
+     */
+    EULER,
+
+    /**
+     * second order kick-drift-kick, see LeapfrogIntegrator
+     */
+    LEAPFROG,
+
+    /**
+     * leapfrog with individual power of two time steps per body, see BlockTimestepIntegrator
+     */
+    BLOCK_TIMESTEP
+}
@@ -0,0 +1,48 @@
+/**
+ * the symplectic leapfrog integration in the kick-drift-kick form:
+ * the movement is changed by the force for half a time step, the bodies move for a whole time step
+ * and the movement is changed by the force at the new positions for the other half of the time step.
+ * it needs one force calculation per step like the Euler integration, but it is of second order
+ * and the energy doesn't drift away, so much larger time steps stay stable.
+ * the forces at the end of a step are kept for the first kick of the next step,
+ * the arrays of the forces are reused in every step
+ */
+public class LeapfrogIntegrator implements Integrator {
+
+    private BodyStore forceStore;   // the store the forces were calculated for
+    private int forceOrder;         // the reorder count of the store when the forces were calculated
+    private int forceCount;         // the number of bodies the forces were calculated for
+    private double[] fx = new double[0], fy = new double[0], fz = new double[0];
+
+    @Override
+    public int step(BodyStore store, ForceSolver solver, double dt) {
+        int newlyExcluded = 0;
+        // the forces of the last step follow the bodies if the store was reordered since
+        if(forceStore == store && forceOrder != store.getReorderCount()){
+            if(forceOrder + 1 == store.getReorderCount()){
+                store.permute(fx); store.permute(fy); store.permute(fz);
+            } else forceStore = null;
+        }
+        // in the first step there are no forces of the last step
+        if(forceStore != store || forceCount != store.size()){
+            if(fx.length < store.size()){
+                fx = new double[store.size()]; fy = new double[store.size()]; fz = new double[store.size()];
+            }
+            newlyExcluded += solver.update(store);
+            solver.calculateForce(store, fx, fy, fz);
+            forceStore = store;
+            forceCount = store.size();
+        }
+        forceOrder = store.getReorderCount();
+        for(int i=0; i<store.size(); i++){
+            store.kick(i, fx[i], fy[i], fz[i], dt/2);
+            store.drift(i, dt);
+        }
+        newlyExcluded += solver.update(store);
+        solver.calculateForce(store, fx, fy, fz);
+        for(int i=0; i<store.size(); i++){
+            store.kick(i, fx[i], fy[i], fz[i], dt/2);
+        }
+        return newlyExcluded;
+    }
+}
@@ -0,0 +1,180 @@
+import java.util.Arrays;
+
+/**
+ * computes the Morton keys (Z-order) of points in a Boundary3D and sorts them with a radix sort.
+ * The key interleaves 21 bits per axis, so the 3 bits of each level describe the octant of the point
+ * like in Boundary3D.whichOctant and sorting the keys sorts the points octant by octant.
+ * The buffers are kept, so the keys can be recomputed in every iteration without allocating memory.
+ */
+public class MortonKeys {
+
+    /**
+     * the number of bits per axis, this is also the number of levels described by a key
+     */
+    public static final int BITS = 21;
+
+    // the number of bits sorted in one pass of the radix sort
+    private static final int RADIX_BITS = 11;
+    private static final int RADIX_MASK = (1 << RADIX_BITS) - 1;
+
+    // the number of keys a thread computes at least
+    private static final int PARALLEL_GRAIN = 4096;
+
+    private long[] keys = new long[0], tmpKeys = new long[0];
+    private int[] order = new int[0], tmpOrder = new int[0];
+    private final int[] count = new int[1 << RADIX_BITS];
+    private int size;
+
+    /**
+     * computes the keys of n points, the point with index i gets the key of (x.get(i), y.get(i), z.get(i)).
+     * after this the order is not sorted yet, see sort()
+     * @param area the area the keys are relative to
+     * @param x the x-coordinates
+     * @param y the y-coordinates
+     * @param z the z-coordinates
+     * @param n the number of points
+     */
+    public void compute(Boundary3D area, DoubleArray x, DoubleArray y, DoubleArray z, int n){
+        ensureCapacity(n);
+        size = n;
+        // the keys are independent of each other, so they can be computed in parallel
+        Parallel.forRange(n, PARALLEL_GRAIN, (from, to) -> {
+            for(int i=from; i<to; i++){
+                keys[i] = key(area, x.get(i), y.get(i), z.get(i));
+                order[i] = i;
+            }
+        });
+    }
+
+    /**
+     * sorts the keys in ascending order with a least significant digit radix sort,
+     * the sort is stable and runs in linear time
+     */
+    public void sort(){
+        if(size == 0) return;
+        for(int shift = 0; shift < 3*BITS; shift += RADIX_BITS){
+            Arrays.fill(count, 0);
+            for(int i=0; i<size; i++){
+                count[(int) (keys[i] >>> shift) & RADIX_MASK]++;
+            }
+            // if all keys have the same digit this pass wouldn't change anything
+            if(count[(int) (keys[0] >>> shift) & RADIX_MASK] == size) continue;
+            int sum = 0;
+            for(int d=0; d<count.length; d++){
+                int c = count[d];
+                count[d] = sum;
+                sum += c;
+            }
+            for(int i=0; i<size; i++){
+                int pos = count[(int) (keys[i] >>> shift) & RADIX_MASK]++;
+                tmpKeys[pos] = keys[i];
+                tmpOrder[pos] = order[i];
+            }
+            long[] k = keys; keys = tmpKeys; tmpKeys = k;
+            int[] o = order; order = tmpOrder; tmpOrder = o;
+        }
+    }
+
+    /**
+     * returns the number of keys
+     * @return the number of keys
+     */
+    public int size(){
+        return size;
+    }
+
+    /**
+     * returns the key on position i, after sort() this is the i-th smallest key
+     * @param i the position
+     * @return the key
+     */
+    public long getKey(int i){
+        return keys[i];
+    }
+
+    /**
+     * returns the index of the point whose key is on position i
+     * @param i the position
+     * @return the index of the point
+     */
+    public int getIndex(int i){
+        return order[i];
+    }
+
+    /**
+     * returns the first position in [from, to) whose key has an octant greater than oct on the given level,
+     * assuming the keys are sorted and share the same octants on all levels above
+     * @param from the first position
+     * @param to the position after the last one
+     * @param level the level, 0 are the children of the area
+     * @param oct the octant
+     * @return the end of the range of the octant
+     */
+    public int endOfOctant(int from, int to, int level, int oct){
+        int lo = from, hi = to;
+        while(lo < hi){
+            int mid = (lo + hi) >>> 1;
+            if(octant(keys[mid], level) <= oct) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+
+    /**
+     * computes the Morton key of a point, points outside of the area are clamped to its border
+     * @param area the area the key is relative to
+     * @param x the x-coordinate
+     * @param y the y-coordinate
+     * @param z the z-coordinate
+     * @return the key
+     */
+    public static long key(Boundary3D area, double x, double y, double z){
+        long qx = quantize(x, area.getX(), area.getL());
+        long qy = quantize(y, area.getY(), area.getW());
+        // in Boundary3D.whichOctant the upper half in z comes first, so the z-axis is inverted
+        long qz = ((1L << BITS) - 1) - quantize(z, area.getZ(), area.getH());
+        return spread(qx) | (spread(qz) << 1) | (spread(qy) << 2);
+    }
+
+    /**
+     * returns the octant of a key on the given level
+     * @param key the key
+     * @param level the level, 0 are the children of the area
+     * @return the octant like in Boundary3D.whichOctant
+     */
+    public static int octant(long key, int level){
+        return (int) (key >>> (3*(BITS - 1 - level))) & 7;
+    }
+
+    /**
+     * maps a coordinate to an integer in [0, 2^BITS)
+     */
+    private static long quantize(double p, double center, double size){
+        double u = (p - (center - size/2))/size;
+        long q = (long) (u * (1L << BITS));
+        if(q < 0) return 0;
+        return Math.min(q, (1L << BITS) - 1);
+    }
+
+    /**
+     * spreads the lower 21 bits of v, so that there are two zero bits between each of them
+     */
+    private static long spread(long v){
+        v &= 0x1fffffL;
+        v = (v | v << 32) & 0x1f00000000ffffL;
+        v = (v | v << 16) & 0x1f0000ff0000ffL;
+        v = (v | v << 8) & 0x100f00f00f00f00fL;
+        v = (v | v << 4) & 0x10c30c30c30c30c3L;
+        v = (v | v << 2) & 0x1249249249249249L;
+        return v;
+    }
+
+    private void ensureCapacity(int n){
+        if(keys.length >= n) return;
+        int capacity = Math.max(n, 2*keys.length);
+        keys = new long[capacity];
+        tmpKeys = new long[capacity];
+        order = new int[capacity];
+        tmpOrder = new int[capacity];
+    }
+}
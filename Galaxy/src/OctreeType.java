@@ -0,0 +1,14 @@
+/**
+ * the available implementations of the BarnesHut-Octree
+ */
+public enum OctreeType {
+    /**
+     * a graph of node objects, see DynOctree
+     */
+    DYNAMIC,
+
+    /**
+     * nodes stored in primitive parallel arrays, see ArrayOctree
+     */
+    ARRAY
+}
@@ -0,0 +1,85 @@
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * runs loops over index ranges in parallel on a ForkJoinPool whose size is set in Config.PARALLELISM
+ */
+public class Parallel {
+
+    /**
+     * the body of a loop over the indices [from, to)
+     */
+    public interface RangeTask {
+        /**
+         * processes the indices [from, to)
+         * @param from the first index
+         * @param to the index after the last one
+         */
+        void run(int from, int to);
+    }
+
+    private static ForkJoinPool pool;
+
+    /**
+     * returns the pool used for all parallel work of the simulation, it is created on the first call
+     * @return the pool
+     */
+    public static synchronized ForkJoinPool getPool(){
+        if(pool == null){
+            int threads = Config.PARALLELISM > 0 ? Config.PARALLELISM : Runtime.getRuntime().availableProcessors();
+            pool = new ForkJoinPool(threads);
+        }
+        return pool;
+    }
+
+    /**
+     * returns the number of threads of the pool
+     * @return the number of threads
+     */
+    public static int getParallelism(){
+        return getPool().getParallelism();
+    }
+
+    /**
+     * runs a task for the indices [0, n).
+     * the range is split in halves until the parts are not bigger than grain,
+     * the parts are then processed in parallel. each index is processed exactly once
+     * @param n the number of indices
+     * @param grain the maximum size of a part
+     * @param task the task
+     */
+    public static void forRange(int n, int grain, RangeTask task){
+        if(n <= grain || getParallelism() == 1){
+            task.run(0, n);
+            return;
+        }
+        getPool().invoke(new RangeAction(0, n, Math.max(grain, 1), task));
+    }
+
+    /**
+     * splits a range recursively and runs the task on the parts
+     */
+    private static class RangeAction extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final int from, to, grain;
+        private final RangeTask task;
+
+        RangeAction(int from, int to, int grain, RangeTask task){
+            this.from = from;
+            this.to = to;
+            this.grain = grain;
+            this.task = task;
+        }
+
+        @Override
+        protected void compute() {
+            if(to - from <= grain){
+                task.run(from, to);
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            invokeAll(new RangeAction(from, mid, grain, task), new RangeAction(mid, to, grain, task));
+        }
+    }
+}
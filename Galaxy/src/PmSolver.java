@@ -0,0 +1,371 @@
+import java.util.Arrays;
+
+/**
+ * calculates the forces with the Particle-Mesh method: the masses are assigned to the points of a grid over the area
+ * (cloud in cell), the potential of the grid is computed with a FFT and the forces are interpolated back to the bodies.
+ * this needs O(N + M log M) operations for N bodies and M grid points, but forces at distances of a few cells are smoothed out.
+ *
+ * the grid has Config.PM_GRID cells per dimension, its points lie on the corners of the cells.
+ * for the FFT the grid is padded with zeros to twice its size per dimension, so the bodies don't feel the periodic images
+ * of the area (isolated boundary conditions). the Green's function -G/r is transformed once when the solver is created.
+ * for TreePmSolver the Green's function is only the long-range part -G*erf(r/(2rs))/r of a split at the radius rs.
+ * the mass assignment is done in parallel for the planes of the grid, first for the even and then for the odd planes,
+ * so no two threads write the same points. the FFT and the interpolation are done in parallel as well
+ */
+public class PmSolver implements ForceSolver {
+
+    // the number of bodies a thread interpolates at once
+    private static final int PARALLEL_GRAIN = 1024;
+
+    private final Boundary3D area;
+    private final double splitRadius;               // 0 -> the full potential
+    private final int n, m;                         // cells per dimension, points of the padded grid per dimension
+    private final double originX, originY, originZ; // the lower corner of the area
+    private final double cellX, cellY, cellZ;       // the size of a cell
+    private final Fft fft;
+    private final double[] green;                   // the transformed Green's function including G and 1/m^3
+    private final double[] re, im;                  // the padded grid, after the calculation re is the potential
+
+    // the bodies that are not excluded
+    private int bodyCount;
+    private int[] storeIndex = new int[16];
+    private int[] slot = new int[16];       // the place of each body of the store in the copies, -1 -> excluded
+    private double[] px = new double[16], py = new double[16], pz = new double[16], pm = new double[16];
+    // the bodies sorted by the plane of their cell, the bodies of the plane k are [planeStart[k], planeStart[k+1])
+    private int[] byPlane = new int[16];
+    private final int[] planeStart;
+    // true -> the potential on the grid belongs to the bodies of the last update
+    private boolean potentialValid;
+    // the interpolated acceleration of each thread, kept between the force calculations
+    private final ThreadLocal<double[]> accelerations = ThreadLocal.withInitial(() -> new double[3]);
+
+    /**
+     * creates a new Particle-Mesh solver for a given area in space
+     * @param area the given area, bodies outside of it are excluded
+     * @param expectedBodies the number of bodies that will probably be added
+     */
+    public PmSolver(Boundary3D area, int expectedBodies){
+        this(area, expectedBodies, 0);
+    }
+
+    /**
+     * creates a new Particle-Mesh solver for the long-range part of the forces
+     * @param area the given area, bodies outside of it are excluded
+     * @param expectedBodies the number of bodies that will probably be added
+     * @param splitRadius the radius where the force is split, see GravityKernel.shortRange. 0 -> the full force
+     */
+    public PmSolver(Boundary3D area, int expectedBodies, double splitRadius){
+        this.area = area;
+        this.splitRadius = splitRadius;
+        this.n = Config.PM_GRID;
+        this.m = 2*n;
+        this.fft = new Fft(m);
+        cellX = area.getL()/n; cellY = area.getW()/n; cellZ = area.getH()/n;
+        originX = area.getX() - area.getL()/2;
+        originY = area.getY() - area.getW()/2;
+        originZ = area.getZ() - area.getH()/2;
+        re = new double[m*m*m];
+        im = new double[m*m*m];
+        green = new double[m*m*m];
+        planeStart = new int[n+1];
+        computeGreen();
+        allocateBodies(Math.max(expectedBodies, 1));
+    }
+
+    /**
+     * copies the bodies of the store that are not excluded, bodies outside of the area are excluded
+     * @param store the store with the bodies
+     * @return the number of bodies that were excluded by this call
+     */
+    @Override
+    public int update(BodyStore store) {
+        if(store.size() > storeIndex.length){
+            allocateBodies(Math.max(store.size(), 2*storeIndex.length));
+        }
+        int newlyExcluded = 0;
+        int count = 0;
+        Arrays.fill(slot, 0, store.size(), -1);
+        for(int i=0; i<store.size(); i++){
+            if(store.isExcluded(i)) continue;
+            double x = store.getX(i), y = store.getY(i), z = store.getZ(i);
+            if(!area.contains(x, y, z)){
+                store.exclude(i);
+                newlyExcluded++;
+                continue;
+            }
+            storeIndex[count] = i;
+            slot[i] = count;
+            px[count] = (x - originX)/cellX; py[count] = (y - originY)/cellY; pz[count] = (z - originZ)/cellZ;
+            pm[count] = store.getMass(i);
+            count++;
+        }
+        bodyCount = count;
+        sortByPlane();
+        potentialValid = false;
+        return newlyExcluded;
+    }
+
+    /**
+     * calculates the force for each body in the store, the index in the result is the index in the store.
+     * excluded bodies get a zero force
+     * @param store the store with the bodies
+     * @return a vector array with the calculated forces
+     */
+    @Override
+    public Vector3[] calculateForce(BodyStore store) {
+        int n = store.size();
+        double[] fx = new double[n], fy = new double[n], fz = new double[n];
+        calculateForce(store, fx, fy, fz);
+        return ForceSolver.toVectors(fx, fy, fz, n);
+    }
+
+    /**
+     * calculates the force for each body in the store and writes it into the arrays at the index of the body.
+     * excluded bodies get a zero force
+     * @param store the store with the bodies
+     * @param fx the x-components of the forces, at least store.size() entries
+     * @param fy the y-components of the forces
+     * @param fz the z-components of the forces
+     */
+    @Override
+    public void calculateForce(BodyStore store, double[] fx, double[] fy, double[] fz) {
+        preparePotential();
+        // the excluded bodies are not on the grid
+        Arrays.fill(fx, 0, store.size(), 0);
+        Arrays.fill(fy, 0, store.size(), 0);
+        Arrays.fill(fz, 0, store.size(), 0);
+        Parallel.forRange(bodyCount, PARALLEL_GRAIN, (from, to) -> {
+            double[] acc = accelerations.get();
+            for(int k=from; k<to; k++){
+                interpolate(px[k], py[k], pz[k], acc);
+                int i = storeIndex[k];
+                fx[i] = acc[0]*pm[k]; fy[i] = acc[1]*pm[k]; fz[i] = acc[2]*pm[k];
+            }
+        });
+    }
+
+    /**
+     * calculates the force for some bodies of the store and writes it into the arrays at the index of the body,
+     * the entries of the other bodies are not changed. excluded bodies get a zero force.
+     * the potential is computed once after each update, only the interpolation is limited to the bodies
+     * @param store the store with the bodies
+     * @param indices the indices of the bodies in the store
+     * @param n the number of indices
+     * @param fx the x-components of the forces, at least store.size() entries
+     * @param fy the y-components of the forces
+     * @param fz the z-components of the forces
+     */
+    @Override
+    public void calculateForce(BodyStore store, int[] indices, int n, double[] fx, double[] fy, double[] fz) {
+        preparePotential();
+        Parallel.forRange(n, PARALLEL_GRAIN, (from, to) -> {
+            double[] acc = accelerations.get();
+            for(int s=from; s<to; s++){
+                int i = indices[s], k = slot[i];
+                if(k < 0){
+                    fx[i] = 0; fy[i] = 0; fz[i] = 0;
+                    continue;
+                }
+                interpolate(px[k], py[k], pz[k], acc);
+                fx[i] = acc[0]*pm[k]; fy[i] = acc[1]*pm[k]; fz[i] = acc[2]*pm[k];
+            }
+        });
+    }
+
+    /**
+     * draws the boundary of the area
+     */
+    @Override
+    public void show() {
+        area.show(java.awt.Color.GRAY);
+    }
+
+    /**
+     * computes the potential on the grid if it doesn't belong to the bodies of the last update yet
+     */
+    private void preparePotential(){
+        if(potentialValid) return;
+        computePotential();
+        potentialValid = true;
+    }
+
+    /**
+     * computes the potential on the grid: assigns the masses, transforms the grid, multiplies it with the
+     * transformed Green's function and transforms it back. only the lines of the padded grid that can contain mass
+     * are transformed in the first passes, and only the lines that are needed for the potential of the area in the last passes
+     */
+    private void computePotential(){
+        int l = n+1;
+        Parallel.forRange(m*m, 64, (from, to) -> {
+            Arrays.fill(re, from*m, to*m, 0);
+            Arrays.fill(im, from*m, to*m, 0);
+        });
+        deposit();
+        fft.transform(re, im, 0, l, l, false);
+        fft.transform(re, im, 1, m, l, false);
+        fft.transform(re, im, 2, m, m, false);
+        Parallel.forRange(m*m, 64, (from, to) -> {
+            for(int i=from*m; i<to*m; i++){
+                re[i] *= green[i];
+                im[i] *= green[i];
+            }
+        });
+        fft.transform(re, im, 2, m, m, true);
+        fft.transform(re, im, 1, m, l, true);
+        fft.transform(re, im, 0, l, l, true);
+    }
+
+    /**
+     * assigns the mass of each body to the 8 grid points around it (cloud in cell).
+     * a body in the plane k writes to the planes k and k+1, so the even planes can be done in parallel and then the odd ones
+     */
+    private void deposit(){
+        for(int parity=0; parity<2; parity++){
+            int first = parity;
+            Parallel.forRange((n - parity + 1)/2, 1, (from, to) -> {
+                for(int p=from; p<to; p++){
+                    int plane = first + 2*p;
+                    for(int s=planeStart[plane]; s<planeStart[plane+1]; s++){
+                        int k = byPlane[s];
+                        depositBody(px[k], py[k], pz[k], pm[k]);
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * adds the mass of one body to the 8 grid points around it, the position is given in cells
+     */
+    private void depositBody(double x, double y, double z, double mass){
+        int i = Math.min((int) x, n-1), j = Math.min((int) y, n-1), k = Math.min((int) z, n-1);
+        double fx = x - i, fy = y - j, fz = z - k;
+        int base = (k*m + j)*m + i;
+        for(int c=0; c<8; c++){
+            double w = ((c & 1) != 0 ? fx : 1-fx)*((c & 2) != 0 ? fy : 1-fy)*((c & 4) != 0 ? fz : 1-fz);
+            re[base + ((c & 4) != 0 ? m*m : 0) + ((c & 2) != 0 ? m : 0) + (c & 1)] += w*mass;
+        }
+    }
+
+    /**
+     * interpolates the acceleration at a position from the 8 grid points around it (cloud in cell),
+     * the acceleration at a grid point is the negative gradient of the potential (central differences)
+     * @param x the x-coordinate in cells
+     * @param y the y-coordinate in cells
+     * @param z the z-coordinate in cells
+     * @param acc the acceleration {x, y, z}
+     */
+    private void interpolate(double x, double y, double z, double[] acc){
+        int i = Math.min((int) x, n-1), j = Math.min((int) y, n-1), k = Math.min((int) z, n-1);
+        double fx = x - i, fy = y - j, fz = z - k;
+        acc[0] = 0; acc[1] = 0; acc[2] = 0;
+        for(int c=0; c<8; c++){
+            int gi = i + (c & 1), gj = j + ((c >> 1) & 1), gk = k + ((c >> 2) & 1);
+            double w = ((c & 1) != 0 ? fx : 1-fx)*((c & 2) != 0 ? fy : 1-fy)*((c & 4) != 0 ? fz : 1-fz);
+            int index = (gk*m + gj)*m + gi;
+            acc[0] -= w*slope(index, gi, 1, cellX);
+            acc[1] -= w*slope(index, gj, m, cellY);
+            acc[2] -= w*slope(index, gk, m*m, cellZ);
+        }
+    }
+
+    /**
+     * returns the derivative of the potential at a grid point along one axis: central differences of fourth order
+     * for the long-range potential of a split, of second order else. one-sided differences at the borders of the grid
+     * @param index the index of the grid point
+     * @param i the coordinate of the grid point along the axis
+     * @param stride the distance of two neighbours along the axis in the grid array
+     * @param h the size of a cell along the axis
+     * @return the derivative
+     */
+    private double slope(int index, int i, int stride, double h){
+        if(i == 0) return (re[index+stride] - re[index])/h;
+        if(i == n) return (re[index] - re[index-stride])/h;
+        double d1 = (re[index+stride] - re[index-stride])/(2*h);
+        if(splitRadius == 0 || i == 1 || i == n-1) return d1;
+        double d2 = (re[index+2*stride] - re[index-2*stride])/(4*h);
+        return (4*d1 - d2)/3;
+    }
+
+    /**
+     * returns the size of a cell of the grid, the largest one if the cells are not cubes
+     * @return the size of a cell
+     */
+    public double getCellSize(){
+        return Math.max(cellX, Math.max(cellY, cellZ));
+    }
+
+    /**
+     * computes the transformed Green's function -G/r of the padded grid, the distances wrap around the padded grid.
+     * the value at r = 0 is chosen so that the central differences give the exact force between neighbouring grid points.
+     * with a split radius it is the long-range part -G*erf(r/(2rs))/r, which is finite at r = 0,
+     * and the smoothing of the cloud in cell scheme is removed from it
+     */
+    private void computeGreen(){
+        double h = Math.min(cellX, Math.min(cellY, cellZ));
+        double scale = Config.G/((double) m*m*m);
+        for(int k=0; k<m; k++){
+            double dz = Math.min(k, m-k)*cellZ;
+            for(int j=0; j<m; j++){
+                double dy = Math.min(j, m-j)*cellY;
+                for(int i=0; i<m; i++){
+                    double dx = Math.min(i, m-i)*cellX;
+                    double r = Math.sqrt(dx*dx + dy*dy + dz*dz);
+                    double g;
+                    if(splitRadius > 0){
+                        g = r == 0 ? 1/(splitRadius*Math.sqrt(Math.PI)) : (1 - GravityKernel.erfc(r/(2*splitRadius)))/r;
+                    } else {
+                        g = r == 0 ? 2.5/h : 1/r;
+                    }
+                    re[(k*m + j)*m + i] = -scale*g;
+                }
+            }
+        }
+        Arrays.fill(im, 0);
+        fft.transform(re, im, false);
+        // the Green's function is real and symmetric, so its transform is real as well
+        System.arraycopy(re, 0, green, 0, green.length);
+        if(splitRadius > 0){
+            // the cloud in cell assignment and interpolation smooth the potential twice, this is undone for the
+            // long-range part. the transform of the long-range part is nearly 0 where the correction gets big
+            double[] window = new double[m];
+            for(int i=0; i<m; i++){
+                double x = Math.PI*Math.min(i, m-i)/m;
+                double sinc = i == 0 ? 1 : Math.sin(x)/x;
+                window[i] = sinc*sinc*sinc*sinc;
+            }
+            for(int k=0; k<m; k++){
+                for(int j=0; j<m; j++){
+                    for(int i=0; i<m; i++){
+                        green[(k*m + j)*m + i] /= window[i]*window[j]*window[k];
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * sorts the bodies by the plane of their cell with a counting sort
+     */
+    private void sortByPlane(){
+        Arrays.fill(planeStart, 0);
+        for(int k=0; k<bodyCount; k++){
+            planeStart[Math.min((int) pz[k], n-1) + 1]++;
+        }
+        for(int p=0; p<n; p++){
+            planeStart[p+1] += planeStart[p];
+        }
+        int[] next = Arrays.copyOf(planeStart, n);
+        for(int k=0; k<bodyCount; k++){
+            byPlane[next[Math.min((int) pz[k], n-1)]++] = k;
+        }
+    }
+
+    private void allocateBodies(int capacity){
+        storeIndex = new int[capacity];
+        slot = new int[capacity];
+        px = new double[capacity]; py = new double[capacity]; pz = new double[capacity];
+        pm = new double[capacity];
+        byPlane = new int[capacity];
+    }
+}
@@ -0,0 +1,106 @@
+/**
+ * computes a tight bounding cube for the root of a tree from the bodies of a store, see Config.ADAPTIVE_BOUNDS.
+ * the cube is computed with two parallel reductions over the bodies: the first one computes the mean position
+ * and the root mean square distance of the bodies from it, the second one the smallest and largest coordinates
+ * of the bodies that are not farther away from the mean than Config.ESCAPER_RADIUS times that distance.
+ * the far-flung bodies (escapers) are left out of the cube, so they don't make the tree deep,
+ * the trees sum up their attraction directly instead
+ */
+public class RootBounds {
+
+    // the number of bodies a thread reduces at least
+    private static final int PARALLEL_GRAIN = 4096;
+
+    // the partial results of the chunks of bodies
+    private double[] sumX = new double[0], sumY = new double[0], sumZ = new double[0], sumR2 = new double[0];
+    private int[] count = new int[0];
+    private double[] minX = new double[0], minY = new double[0], minZ = new double[0];
+    private double[] maxX = new double[0], maxY = new double[0], maxZ = new double[0];
+
+    /**
+     * computes the bounding cube of the bodies of the store that are not excluded
+     * @param store the store with the bodies
+     * @param fallback the area that is returned if the store has no bodies
+     * @return the cube, its upper limits lie slightly above the largest coordinates
+     */
+    public Boundary3D compute(BodyStore store, Boundary3D fallback){
+        int n = store.size();
+        int chunks = Math.max(1, Math.min((n + PARALLEL_GRAIN - 1)/PARALLEL_GRAIN, 4*Parallel.getParallelism()));
+        int chunkSize = (n + chunks - 1)/chunks;
+        allocate(chunks);
+        // the first body is the origin of the sums, so the squares stay precise far away from (0 0 0)
+        int first = 0;
+        while(first < n && store.isExcluded(first)) first++;
+        if(first == n) return fallback;
+        double ox = store.getX(first), oy = store.getY(first), oz = store.getZ(first);
+
+        Parallel.forRange(chunks, 1, (from, to) -> {
+            for(int c=from; c<to; c++){
+                double sx = 0, sy = 0, sz = 0, sr2 = 0;
+                int k = 0;
+                for(int i=c*chunkSize; i<Math.min(n, (c+1)*chunkSize); i++){
+                    if(store.isExcluded(i)) continue;
+                    double x = store.getX(i)-ox, y = store.getY(i)-oy, z = store.getZ(i)-oz;
+                    sx += x; sy += y; sz += z;
+                    sr2 += x*x + y*y + z*z;
+                    k++;
+                }
+                sumX[c] = sx; sumY[c] = sy; sumZ[c] = sz; sumR2[c] = sr2; count[c] = k;
+            }
+        });
+        double sx = 0, sy = 0, sz = 0, sr2 = 0;
+        int bodies = 0;
+        for(int c=0; c<chunks; c++){
+            sx += sumX[c]; sy += sumY[c]; sz += sumZ[c]; sr2 += sumR2[c];
+            bodies += count[c];
+        }
+        double mx = sx/bodies, my = sy/bodies, mz = sz/bodies;
+        double variance = Math.max(sr2/bodies - (mx*mx + my*my + mz*mz), 0);
+        double limit2 = Config.ESCAPER_RADIUS*Config.ESCAPER_RADIUS*variance;
+
+        Parallel.forRange(chunks, 1, (from, to) -> {
+            for(int c=from; c<to; c++){
+                double lx = Double.MAX_VALUE, ly = Double.MAX_VALUE, lz = Double.MAX_VALUE;
+                double hx = -Double.MAX_VALUE, hy = -Double.MAX_VALUE, hz = -Double.MAX_VALUE;
+                for(int i=c*chunkSize; i<Math.min(n, (c+1)*chunkSize); i++){
+                    if(store.isExcluded(i)) continue;
+                    double x = store.getX(i)-ox, y = store.getY(i)-oy, z = store.getZ(i)-oz;
+                    double dx = x-mx, dy = y-my, dz = z-mz;
+                    if(dx*dx + dy*dy + dz*dz > limit2) continue;
+                    lx = Math.min(lx, x); ly = Math.min(ly, y); lz = Math.min(lz, z);
+                    hx = Math.max(hx, x); hy = Math.max(hy, y); hz = Math.max(hz, z);
+                }
+                minX[c] = lx; minY[c] = ly; minZ[c] = lz;
+                maxX[c] = hx; maxY[c] = hy; maxZ[c] = hz;
+            }
+        });
+        double lx = Double.MAX_VALUE, ly = Double.MAX_VALUE, lz = Double.MAX_VALUE;
+        double hx = -Double.MAX_VALUE, hy = -Double.MAX_VALUE, hz = -Double.MAX_VALUE;
+        for(int c=0; c<chunks; c++){
+            lx = Math.min(lx, minX[c]); ly = Math.min(ly, minY[c]); lz = Math.min(lz, minZ[c]);
+            hx = Math.max(hx, maxX[c]); hy = Math.max(hy, maxY[c]); hz = Math.max(hz, maxZ[c]);
+        }
+        double edge = Math.max(hx-lx, Math.max(hy-ly, hz-lz));
+        // the upper limits of a Boundary3D are not included, so the cube is made a bit bigger
+        edge = edge > 0 ? edge*(1 + 1e-6) : 1;
+        return new Boundary3D(ox + (lx+hx)/2, oy + (ly+hy)/2, oz + (lz+hz)/2, edge);
+    }
+
+    /**
+     * returns a cube around the same centre whose edges are longer by Config.ROOT_PADDING,
+     * so the bodies can move a bit before they leave it
+     * @param cube the bounding cube
+     * @return the padded cube
+     */
+    public static Boundary3D padded(Boundary3D cube){
+        return new Boundary3D(cube.getX(), cube.getY(), cube.getZ(), cube.getW()*(1 + Config.ROOT_PADDING));
+    }
+
+    private void allocate(int chunks){
+        if(count.length >= chunks) return;
+        sumX = new double[chunks]; sumY = new double[chunks]; sumZ = new double[chunks]; sumR2 = new double[chunks];
+        count = new int[chunks];
+        minX = new double[chunks]; minY = new double[chunks]; minZ = new double[chunks];
+        maxX = new double[chunks]; maxY = new double[chunks]; maxZ = new double[chunks];
+    }
+}
@@ -1,4 +1,6 @@
 import java.awt.*;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Random;
 
 public class Simulation {
@@ -6,9 +8,32 @@ public class Simulation {
     private static final Random random = new Random();
 
     // The main simulation method using instances of other classes.
+    // with --headless or any other option the simulation runs without a window, see HeadlessOptions
     public static void main(String[] args) {
 
+        HeadlessOptions options = HeadlessOptions.parse(args);
+        if(options != null){
+            // no AWT component may need a display, the colours of the bodies are only data
+            System.setProperty("java.awt.headless", "true");
+        }
+
         // simulation whit randomly generated bodies
+        BodyStore store = createBodies();
+
+        Boundary3D boundary = new Boundary3D(0,0,0,Config.AREA_SIZE);
+
+        if(options != null){
+            runHeadless(store, boundary, options);
+        } else {
+            runWindow(store, boundary);
+        }
+    }
+
+    /**
+     * generates two galaxies around two black holes, always the same because of the fixed seed
+     * @return the store with the bodies
+     */
+    static BodyStore createBodies(){
 
         //to create a uniform starting situation, we set a seed for the pseudo-random numbers
         setRandomSeed(123456789);
@@ -43,79 +68,58 @@ public class Simulation {
         System.arraycopy(galaxy1, 0, testBodies, 0, galaxy1.length);
         System.arraycopy(galaxy2, 0, testBodies, galaxy1.length, galaxy2.length);
 
+        // the state of all bodies is kept in one store, from now on the bodies are only views on it
+        return new BodyStore(testBodies);
+    }
+
+    /**
+     * runs the simulation in a StdDraw window until no bodies remain
+     * @param store the store with the bodies
+     * @param boundary the area of the solver
+     */
+    private static void runWindow(BodyStore store, Boundary3D boundary){
+
         // initiate the StdDraw-class
         StdDraw.setCanvasSize(Config.WINDOW_SIZE, Config.WINDOW_SIZE);
         StdDraw.setScale(-Config.AREA_SIZE/2,Config.AREA_SIZE/2);
         StdDraw.enableDoubleBuffering();
         StdDraw.clear(StdDraw.BLACK);
 
-
-        Boundary3D boundary = new Boundary3D(0,0,0,Config.AREA_SIZE);
-
-        double seconds = 0;
-
-        boolean[] excludedBodies= new boolean[Config.N_BODIES];
-
-        int remainingBodies = Config.N_BODIES;
+        // the solver (e.g. the tree) is reused in every iteration
+        Loop loop = new Loop(store, boundary);
 
         // timer for performance measurement
         long start, end, div;
 
         // simulation loop
-        while(remainingBodies>0) { // to simulate one year (seconds < 3600*24*365)
+        while(loop.remainingBodies>0) { // to simulate one year (seconds < 3600*24*365)
 
             // set timer
             start = System.currentTimeMillis();
 
-            seconds++; // each iteration computes the movement of the celestial bodies within one second.
-
-            //add all bodies to the tree
-            BarnesHutOctree octree = new DynOctree(boundary);
-
-            for(int i=0; i<testBodies.length;i++){
-                if(!excludedBodies[i]) {
-                    boolean result = octree.add(testBodies[i]);
-                    if (!result) {
-                        excludedBodies[i] = true;
-                        remainingBodies--;
-                    }
-                }
-            }
-
-            // compute the force for each body
-            Vector3[] forceList = octree.calculateForce(testBodies);
-            // now forceOnBody[i] holds the force vector exerted on body with index i.
-
-            // for each body (with index i): move it according to the total force exerted on it.
-            for(int i=0; i<testBodies.length;i++){
-                testBodies[i].move(forceList[i]);
-            }
+            loop.step();
 
             //stop the timer
             end = System.currentTimeMillis();
 
-            // show all movements in StdDraw canvas only every x seconds (to speed up the simulation)
-            if (seconds%(10) == 0 || seconds<=1){
+            // show all movements in StdDraw canvas only every x iterations (to speed up the simulation)
+            if (loop.iterations%(10) == 0 || loop.iterations<=1){
                 // clear old positions (exclude the following line if you want to draw orbits).
                 StdDraw.clear(StdDraw.BLACK);
 
-                for(int i=0; i<testBodies.length; i++) {
-                    if (!excludedBodies[i]){
-                        testBodies[i].draw(0.005);
-                    }
-                }
+                drawBodies(store, 0.005);
 
                 //draw the boundaries of the tree
                 if(false) {
                     StdDraw.setPenRadius(0.001);
-                    octree.show();
+                    loop.solver.show();
                 }
 
                 //calculate the time we needed for this iteration
                 div = end - start;
 
                 // print it to the top right corner
-                printStatistic(div,seconds,remainingBodies);
+                printStatistic(div,loop.seconds,loop.remainingBodies);
 
                 // show new screen
                 StdDraw.show();
@@ -123,12 +127,170 @@ public class Simulation {
         }
         // print the statistic one last time and a message that the simulation has reached its end
         StdDraw.clear(StdDraw.BLACK);
-        printStatistic(0,seconds,remainingBodies);
+        printStatistic(0,loop.seconds,loop.remainingBodies);
         StdDraw.setPenColor(Color.GREEN);
         StdDraw.text(0,0,"End of Simulation");
         StdDraw.show();
     }
 
+    /**
+     * runs the simulation without a window until the number of iterations or the simulated time of the options
+     * is reached or no bodies remain. the results only go to the sinks, the throughput is reported at the end
+     * @param store the store with the bodies
+     * @param boundary the area of the solver
+     * @param options the options of the run
+     */
+    private static void runHeadless(BodyStore store, Boundary3D boundary, HeadlessOptions options){
+        List<SimulationSink> sinks = new ArrayList<>();
+        sinks.add(new ConsoleSink(options.getMetricsInterval()));
+        if(options.getOutputDirectory() != null){
+            sinks.add(new CsvSink(options.getOutputDirectory()));
+        }
+
+        Loop loop = new Loop(store, boundary);
+        long bodySteps = 0;
+        long nanos = 0;
+        while(loop.remainingBodies > 0 && loop.iterations < options.getSteps() && loop.seconds < options.getEndTime()){
+            bodySteps += loop.remainingBodies;
+            long start = System.nanoTime();
+            loop.step();
+            long iterationNanos = System.nanoTime() - start;
+            nanos += iterationNanos;
+            for(SimulationSink sink : sinks){
+                sink.metrics(loop.iterations, loop.seconds, loop.remainingBodies, iterationNanos);
+            }
+            if(options.getSnapshotInterval() > 0 && loop.iterations % options.getSnapshotInterval() == 0){
+                for(SimulationSink sink : sinks){
+                    sink.snapshot(loop.iterations, loop.seconds, store);
+                }
+            }
+        }
+        for(SimulationSink sink : sinks){
+            if(options.getSnapshotInterval() == 0 || loop.iterations % options.getSnapshotInterval() != 0){
+                sink.snapshot(loop.iterations, loop.seconds, store);
+            }
+            sink.finish(loop.iterations, loop.seconds, loop.remainingBodies, bodySteps, nanos);
+        }
+    }
+
+    /**
+     * the state of a running simulation: the solver, the integration and the passed time.
+     * one iteration computes the movement of the celestial bodies within Config.TIME_STEP seconds
+     */
+    private static class Loop {
+
+        private final BodyStore store;
+        private final Boundary3D boundary;
+        private ForceSolver solver;
+        private final Integrator integrator = createIntegrator();
+        // the bounding cube of the bodies for the Morton order of the store
+        private final RootBounds rootBounds = new RootBounds();
+
+        private double seconds = 0;
+        private long iterations = 0;
+        private int remainingBodies;
+
+        Loop(BodyStore store, Boundary3D boundary){
+            this.store = store;
+            this.boundary = boundary;
+            remainingBodies = store.getRemaining();
+            // the solver (e.g. the tree) is reused in every iteration
+            solver = createSolver(boundary, remainingBodies);
+        }
+
+        /**
+         * computes one iteration
+         */
+        void step(){
+            seconds += Config.TIME_STEP;
+            iterations++;
+
+            // compute the forces with the solver and move each body according to the total force exerted on it.
+            remainingBodies -= integrator.step(store, solver, Config.TIME_STEP);
+
+            // for a few bodies the direct sum is faster than the other solvers
+            if(remainingBodies < Config.DIRECT_SUM_BELOW && !(solver instanceof DirectSumSolver)){
+                solver = new DirectSumSolver(boundary, remainingBodies);
+            }
+
+            // keep the bodies that are near each other in space near each other in memory
+            if(Config.REORDER_INTERVAL > 0 && iterations % Config.REORDER_INTERVAL == 0){
+                store.sortByMortonKeys(rootBounds.compute(store, boundary));
+            }
+        }
+    }
+
+    /**
+     * draws all bodies of the store that are not excluded as dots with a fixed size
+     * @param store the store with the bodies
+     * @param sizeOnScreen the size of the dots 0.01->1% (of the window)
+     */
+    private static void drawBodies(BodyStore store, double sizeOnScreen){
+        StdDraw.setPenRadius(sizeOnScreen);
+        for(int i=0; i<store.size(); i++){
+            if(!store.isExcluded(i)){
+                StdDraw.setPenColor(store.getBody(i).getColor());
+                StdDraw.point(store.getX(i), store.getY(i));
+            }
+        }
+    }
+
+    /**
+     * creates the solver selected in Config.SOLVER, or the direct sum for less than Config.DIRECT_SUM_BELOW bodies
+     * @param boundary the area of the solver
+     * @param bodies the number of bodies in the simulation
+     * @return the solver
+     */
+    private static ForceSolver createSolver(Boundary3D boundary, int bodies){
+        if(bodies < Config.DIRECT_SUM_BELOW){
+            return new DirectSumSolver(boundary, bodies);
+        }
+        switch (Config.SOLVER){
+            case DIRECT:
+                return new DirectSumSolver(boundary, bodies);
+            case FMM:
+                return new FmmSolver(boundary, Config.N_BODIES);
+            case PM:
+                return new PmSolver(boundary, Config.N_BODIES);
+            case TREE_PM:
+                return new TreePmSolver(boundary, Config.N_BODIES);
+            case BARNES_HUT:
+            default:
+                return createOctree(boundary);
+        }
+    }
+
+    /**
+     * creates the BarnesHut-Octree selected in Config.OCTREE_TYPE
+     * @param boundary the area of the tree
+     * @return the empty tree
+     */
+    private static BarnesHutOctree createOctree(Boundary3D boundary){
+        switch (Config.OCTREE_TYPE){
+            case ARRAY:
+                return new ArrayOctree(boundary, Config.N_BODIES);
+            case DYNAMIC:
+            default:
+                return new DynOctree(boundary);
+        }
+    }
+
+    /**
+     * creates the integration selected in Config.INTEGRATOR
+     * @return the integrator
+     */
+    private static Integrator createIntegrator(){
+        switch (Config.INTEGRATOR){
+            case LEAPFROG:
+                return new LeapfrogIntegrator();
+            case BLOCK_TIMESTEP:
+                return new BlockTimestepIntegrator();
+            case EULER:
+            default:
+                return new EulerIntegrator();
+        }
+    }
+
     /**
      * returns a random number in the specified interval
      * @param lower the lower limit
@@ -0,0 +1,33 @@
+/**
+ * receives the results of a headless run of the Simulation instead of the window.
+ * a sink must not use StdDraw
+ */
+public interface SimulationSink {
+
+    /**
+     * is called after each iteration
+     * @param iteration the number of the iteration, starting at 1
+     * @param seconds the simulated time
+     * @param remainingBodies the number of bodies that are not excluded
+     * @param iterationNanos the time the iteration took in nanoseconds
+     */
+    void metrics(long iteration, double seconds, int remainingBodies, long iterationNanos);
+
+    /**
+     * is called for the snapshots of the bodies and once at the end
+     * @param iteration the number of the iteration
+     * @param seconds the simulated time
+     * @param store the store with the bodies
+     */
+    void snapshot(long iteration, double seconds, BodyStore store);
+
+    /**
+     * is called once at the end of the run
+     * @param iterations the number of iterations
+     * @param seconds the simulated time
+     * @param remainingBodies the number of bodies that are not excluded
+     * @param bodySteps the sum of the bodies that were moved in each iteration
+     * @param nanos the time of all iterations in nanoseconds, without the time of the sinks
+     */
+    void finish(long iterations, double seconds, int remainingBodies, long bodySteps, long nanos);
+}
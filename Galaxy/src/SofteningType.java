@@ -0,0 +1,21 @@
+/**
+ * the available kernels to soften the gravity of close bodies, see GravityKernel.inverseCube
+ */
+public enum SofteningType {
+    /**
+     * the plain Newtonian 1/r^2 law
+     */
+    NONE,
+
+    /**
+     * the Plummer kernel: the attraction is m*r/(r^2+eps^2)^(3/2), where eps is Config.SOFTENING_LENGTH.
+     * it is simple, but the force is also softened a bit at bigger distances
+     */
+    PLUMMER,
+
+    /**
+     * the cubic spline kernel (Monaghan and Lattanzio): the mass is smeared out over the radius 2.8*eps,
+     * outside of it the force is exactly Newtonian. in the centre it is as deep as a Plummer kernel with eps
+     */
+    SPLINE
+}
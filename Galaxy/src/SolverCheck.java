@@ -0,0 +1,271 @@
+import java.awt.Color;
+
+/**
+ * checks the solvers and integrators under the settings of Config: the refit and the grouped walk of the ArrayOctree
+ * and the accuracy of the approximating solvers against the direct sum, as well as the integrators on an orbit.
+ * run it with "java SolverCheck", each check prints OK or what went wrong.
+ * the program exits with the status 1 if a check failed
+ */
+public class SolverCheck {
+
+    // the allowed mean relative error of the forces against the direct sum on the bodies of the Simulation.
+    // the Barnes-Hut trees with Config.THETA, about 3e-3 was measured
+    private static final double TREE_TOLERANCE = 1e-2;
+    // the grouped walk of the ArrayOctree against its walk per body, about 3e-3 was measured
+    private static final double GROUP_TOLERANCE = 1e-2;
+    // the FMM of order Config.FMM_ORDER with Config.FMM_THETA stays below 1e-2, about 5e-3 was measured
+    private static final double FMM_TOLERANCE = 1e-2;
+    // the tiled direct sum only differs by the order of the additions, about 4e-15 was measured
+    private static final double DIRECT_TOLERANCE = 1e-12;
+    // the PM grid of Config.PM_GRID cells smooths out the forces at distances of a few cells, about 4e-2 was measured
+    private static final double PM_TOLERANCE = 0.1;
+    // the TreePM adds the short-range forces of the tree to the grid, about 7.5e-3 was measured
+    private static final double TREEPM_TOLERANCE = 2e-2;
+
+    // the largest energy error of the leapfrog on the orbit of checkEnergy() compared to the Euler integration,
+    // about 2e-3 against 3e-2 was measured
+    private static final double LEAPFROG_ENERGY_RATIO = 0.1;
+
+    private static int failures;
+    // the forces of the direct sum on the bodies of the Simulation, computed once
+    private static double[] referenceX, referenceY, referenceZ;
+
+    public static void main(String[] args) {
+        checkRefit(Config.LEAF_CAPACITY);
+        checkRefit(1);
+        Boundary3D boundary = new Boundary3D(0, 0, 0, Config.AREA_SIZE);
+        checkEnergy();
+        checkBlockTimesteps();
+        checkAccuracy("accuracy of the ArrayOctree", new ArrayOctree(boundary, Config.N_BODIES), TREE_TOLERANCE);
+        checkAccuracy("accuracy of the DynOctree", new DynOctree(boundary), TREE_TOLERANCE);
+        checkGroupedWalk(boundary);
+        checkAccuracy("accuracy of the tiled direct sum", new DirectSumSolver(boundary, Config.N_BODIES), DIRECT_TOLERANCE);
+        checkAccuracy("accuracy of the FMM", new FmmSolver(boundary, Config.N_BODIES), FMM_TOLERANCE);
+        checkAccuracy("accuracy of the PM", new PmSolver(boundary, Config.N_BODIES), PM_TOLERANCE);
+        checkAccuracy("accuracy of the TreePM", new TreePmSolver(boundary, Config.N_BODIES), TREEPM_TOLERANCE);
+
+        if(failures > 0){
+            System.out.println(failures + " checks failed");
+            System.exit(1);
+        }
+        System.out.println("all checks passed");
+    }
+
+    /**
+     * the ArrayOctree must keep its tree between the iterations (Config.TREE_REFIT):
+     * the bodies of the Simulation are moved like in the Simulation, the tree may only be rebuilt
+     * for the first build, after the Morton reorders of the store and for a few other reasons
+     * @param leafCapacity the leaf capacity of the tree
+     */
+    private static void checkRefit(int leafCapacity){
+        int steps = 48;
+        BodyStore store = Simulation.createBodies();
+        Boundary3D boundary = new Boundary3D(0, 0, 0, Config.AREA_SIZE);
+        ArrayOctree tree = new ArrayOctree(boundary, store.size(), leafCapacity);
+        Integrator integrator = new LeapfrogIntegrator();
+        RootBounds rootBounds = new RootBounds();
+        for(int s=1; s<=steps; s++){
+            integrator.step(store, tree, Config.TIME_STEP);
+            if(Config.REORDER_INTERVAL > 0 && s % Config.REORDER_INTERVAL == 0){
+                store.sortByMortonKeys(rootBounds.compute(store, boundary));
+            }
+        }
+        // the leapfrog updates the tree once more in the first step
+        long updates = steps + 1;
+        long expected = 1 + (Config.REORDER_INTERVAL > 0 ? steps/Config.REORDER_INTERVAL : 0);
+        long allowed = expected + updates/4;
+        report("refit of the ArrayOctree with a leaf capacity of " + leafCapacity, !Config.TREE_REFIT || tree.getRebuildCount() <= allowed,
+                tree.getRebuildCount() + " rebuilds and " + tree.getRefitCount() + " refits in " + updates
+                        + " updates, at most " + allowed + " rebuilds are allowed");
+    }
+
+    /**
+     * the leapfrog must keep the energy of an orbit much better than the Euler integration with the same time step:
+     * two equal bodies on an eccentric orbit are integrated for five periods with 200 steps per period
+     */
+    private static void checkEnergy(){
+        int steps = 1000;
+        double leapfrog = energyError(new LeapfrogIntegrator(), steps);
+        double euler = energyError(new EulerIntegrator(), steps);
+        report("energy of the leapfrog", leapfrog <= LEAPFROG_ENERGY_RATIO*euler, "largest relative energy error "
+                + leapfrog + " against " + euler + " of the Euler integration (at most "
+                + LEAPFROG_ENERGY_RATIO + " times of it is allowed)");
+    }
+
+    /**
+     * the block time steps with the deepest level 0 must move the bodies of the Simulation
+     * exactly like the leapfrog. both use the PmSolver, its forces on a subset of the bodies
+     * are the same as on all bodies
+     */
+    private static void checkBlockTimesteps(){
+        int steps = 3;
+        BodyStore leapfrog = Simulation.createBodies();
+        BodyStore block = Simulation.createBodies();
+        Boundary3D boundary = new Boundary3D(0, 0, 0, Config.AREA_SIZE);
+        Integrator leapfrogIntegrator = new LeapfrogIntegrator();
+        Integrator blockIntegrator = new BlockTimestepIntegrator(0);
+        ForceSolver leapfrogSolver = new PmSolver(boundary, leapfrog.size());
+        ForceSolver blockSolver = new PmSolver(boundary, block.size());
+        int different = 0;
+        for(int s=0; s<steps; s++){
+            leapfrogIntegrator.step(leapfrog, leapfrogSolver, Config.TIME_STEP);
+            blockIntegrator.step(block, blockSolver, Config.TIME_STEP);
+        }
+        for(int i=0; i<leapfrog.size(); i++){
+            if(leapfrog.getX(i) != block.getX(i) || leapfrog.getY(i) != block.getY(i) || leapfrog.getZ(i) != block.getZ(i)
+                    || leapfrog.getVX(i) != block.getVX(i) || leapfrog.getVY(i) != block.getVY(i)
+                    || leapfrog.getVZ(i) != block.getVZ(i) || leapfrog.isExcluded(i) != block.isExcluded(i)){
+                different++;
+            }
+        }
+        report("block time steps on level 0", different == 0,
+                different + " of " + leapfrog.size() + " bodies differ from the leapfrog after " + steps + " steps");
+    }
+
+    /**
+     * integrates the orbit of two bodies and returns the largest relative change of the total energy
+     * @param integrator the integrator
+     * @param steps the number of steps, 200 per period
+     * @return the largest relative energy error
+     */
+    private static double energyError(Integrator integrator, int steps){
+        BodyStore store = createOrbit();
+        double d = store.getX(1) - store.getX(0);
+        double period = 2*Math.PI*Math.sqrt(d*d*d/(Config.G*(store.getMass(0) + store.getMass(1))));
+        ForceSolver solver = new DirectSumSolver(new Boundary3D(0, 0, 0, Config.AREA_SIZE), store.size());
+        double initial = energy(store), worst = 0;
+        for(int s=0; s<steps; s++){
+            integrator.step(store, solver, period/200);
+            worst = Math.max(worst, Math.abs(energy(store) - initial)/Math.abs(initial));
+        }
+        return worst;
+    }
+
+    /**
+     * creates two heavy bodies at a distance far above Config.SOFTENING_LENGTH,
+     * they move with 80% of the speed of a circular orbit
+     * @return the store with the two bodies
+     */
+    private static BodyStore createOrbit(){
+        double m = 1e40, d = 2e19;
+        double v = 0.8*Math.sqrt(Config.G*m/(2*d));
+        return new BodyStore(new CelestialBody[]{
+                new CelestialBody("star1", m, 1e9, new Vector3(-d/2, 0, 0), new Vector3(0, -v, 0), Color.white),
+                new CelestialBody("star2", m, 1e9, new Vector3(d/2, 0, 0), new Vector3(0, v, 0), Color.white)});
+    }
+
+    /**
+     * computes the kinetic and potential energy of the bodies, without softening
+     * @param store the bodies
+     * @return the total energy in joule
+     */
+    private static double energy(BodyStore store){
+        double kinetic = 0, potential = 0;
+        for(int i=0; i<store.size(); i++){
+            double vx = store.getVX(i), vy = store.getVY(i), vz = store.getVZ(i);
+            kinetic += 0.5*store.getMass(i)*(vx*vx + vy*vy + vz*vz);
+            for(int j=i+1; j<store.size(); j++){
+                double dx = store.getX(j)-store.getX(i), dy = store.getY(j)-store.getY(i), dz = store.getZ(j)-store.getZ(i);
+                potential -= Config.G*store.getMass(i)*store.getMass(j)/Math.sqrt(dx*dx + dy*dy + dz*dz);
+            }
+        }
+        return kinetic + potential;
+    }
+
+    /**
+     * compares the forces of a solver on the bodies of the Simulation with the direct sum,
+     * the mean relative error must not be bigger than the tolerance
+     * @param name the name of the check
+     * @param solver the solver, it gets a new store of the bodies
+     * @param tolerance the allowed mean relative error
+     */
+    private static void checkAccuracy(String name, ForceSolver solver, double tolerance){
+        BodyStore store = Simulation.createBodies();
+        int n = store.size();
+        computeReference(store);
+        double[] fx = new double[n], fy = new double[n], fz = new double[n];
+        solver.update(store);
+        solver.calculateForce(store, fx, fy, fz);
+        double sum = 0, worst = 0;
+        int count = 0;
+        for(int i=0; i<n; i++){
+            double length = Math.sqrt(referenceX[i]*referenceX[i] + referenceY[i]*referenceY[i] + referenceZ[i]*referenceZ[i]);
+            if(store.isExcluded(i) || length == 0) continue;
+            double dx = fx[i]-referenceX[i], dy = fy[i]-referenceY[i], dz = fz[i]-referenceZ[i];
+            double error = Math.sqrt(dx*dx + dy*dy + dz*dz)/length;
+            sum += error;
+            worst = Math.max(worst, error);
+            count++;
+        }
+        double mean = count > 0 ? sum/count : 0;
+        report(name, count > 0 && mean <= tolerance, "mean relative error " + mean + " (at most " + tolerance
+                + " is allowed), largest " + worst + " over " + count + " bodies");
+    }
+
+    /**
+     * the grouped walk of the ArrayOctree (Config.GROUPED_WALK) must give about the same forces
+     * as the walk per body, which is used for a subset of the bodies
+     * @param boundary the area of the tree
+     */
+    private static void checkGroupedWalk(Boundary3D boundary){
+        BodyStore store = Simulation.createBodies();
+        int n = store.size();
+        ArrayOctree tree = new ArrayOctree(boundary, n);
+        tree.update(store);
+        double[] fx = new double[n], fy = new double[n], fz = new double[n];
+        double[] gx = new double[n], gy = new double[n], gz = new double[n];
+        int[] indices = new int[n];
+        for(int i=0; i<n; i++) indices[i] = i;
+        tree.calculateForce(store, fx, fy, fz);
+        tree.calculateForce(store, indices, n, gx, gy, gz);
+        double sum = 0, worst = 0;
+        int count = 0;
+        for(int i=0; i<n; i++){
+            double length = Math.sqrt(gx[i]*gx[i] + gy[i]*gy[i] + gz[i]*gz[i]);
+            if(store.isExcluded(i) || length == 0) continue;
+            double dx = fx[i]-gx[i], dy = fy[i]-gy[i], dz = fz[i]-gz[i];
+            double difference = Math.sqrt(dx*dx + dy*dy + dz*dz)/length;
+            sum += difference;
+            worst = Math.max(worst, difference);
+            count++;
+        }
+        double mean = count > 0 ? sum/count : 0;
+        report("grouped walk of the ArrayOctree", !Config.GROUPED_WALK || (count > 0 && mean <= GROUP_TOLERANCE),
+                "mean relative difference to the walk per body " + mean + " (at most " + GROUP_TOLERANCE
+                        + " is allowed), largest " + worst + " over " + count + " bodies");
+    }
+
+    /**
+     * sums up the attraction of every pair of bodies with a plain loop, independent of the solvers
+     * @param store the bodies of the Simulation
+     */
+    private static void computeReference(BodyStore store){
+        int n = store.size();
+        if(referenceX != null && referenceX.length == n) return;
+        referenceX = new double[n]; referenceY = new double[n]; referenceZ = new double[n];
+        for(int i=0; i<n; i++){
+            double x = store.getX(i), y = store.getY(i), z = store.getZ(i);
+            double ax = 0, ay = 0, az = 0;
+            for(int j=0; j<n; j++){
+                double dx = store.getX(j)-x, dy = store.getY(j)-y, dz = store.getZ(j)-z;
+                double r2 = dx*dx + dy*dy + dz*dz;
+                if(r2 == 0) continue;
+                double s = store.getMass(j)*GravityKernel.inverseCube(r2);
+                ax += dx*s; ay += dy*s; az += dz*s;
+            }
+            double f = Config.G*store.getMass(i);
+            referenceX[i] = ax*f; referenceY[i] = ay*f; referenceZ[i] = az*f;
+        }
+    }
+
+    /**
+     * prints the result of a check
+     * @param name the name of the check
+     * @param ok true -> the check passed
+     * @param detail the measured values
+     */
+    private static void report(String name, boolean ok, String detail){
+        System.out.println((ok ? "OK     " : "FAILED ") + name + ": " + detail);
+        if(!ok) failures++;
+    }
+}
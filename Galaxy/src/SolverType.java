@@ -0,0 +1,29 @@
+/**
+ * the available methods to calculate the forces
+ */
+public enum SolverType {
+    /**
+     * a BarnesHut-Octree, the implementation is selected in Config.OCTREE_TYPE
+     */
+    BARNES_HUT,
+
+    /**
+     * the Fast Multipole Method, see FmmSolver
+     */
+    FMM,
+
+    /**
+     * the Particle-Mesh method on a grid, see PmSolver
+     */
+    PM,
+
+    /**
+     * the long-range forces from a grid and the short-range forces from a tree, see TreePmSolver
+     */
+    TREE_PM,
+
+    /**
+     * the direct sum over all pairs of bodies, see DirectSumSolver
+     */
+    DIRECT
+}
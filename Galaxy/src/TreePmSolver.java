@@ -0,0 +1,108 @@
+/**
+ * calculates the forces with the TreePM method: the potential of each body is split at the radius rs
+ * into a long-range part -G*m*erf(r/(2rs))/r and a short-range part -G*m*erfc(r/(2rs))/r.
+ * the long-range part is smooth and comes from the grid of a PmSolver, the short-range part comes from an ArrayOctree
+ * whose walk skips the nodes beyond the cutoff radius Config.TREEPM_CUTOFF*rs.
+ * so the grid doesn't have to resolve the cores of the galaxies and the tree doesn't have to walk to the far away bodies.
+ * the split radius is Config.TREEPM_SPLIT cells of the grid
+ */
+public class TreePmSolver implements ForceSolver {
+
+    private final PmSolver mesh;
+    private final ArrayOctree tree;
+    // the short-range forces of the tree
+    private double[] shortX = new double[0], shortY = new double[0], shortZ = new double[0];
+
+    /**
+     * creates a new TreePM solver for a given area in space
+     * @param area the given area, bodies outside of it are excluded
+     * @param expectedBodies the number of bodies that will probably be added
+     */
+    public TreePmSolver(Boundary3D area, int expectedBodies){
+        double cell = Math.max(area.getL(), Math.max(area.getW(), area.getH()))/Config.PM_GRID;
+        double splitRadius = Config.TREEPM_SPLIT*cell;
+        mesh = new PmSolver(area, expectedBodies, splitRadius);
+        tree = new ArrayOctree(area, expectedBodies);
+        tree.setSplitRadius(splitRadius);
+    }
+
+    /**
+     * updates the tree and the grid to the current positions of the bodies.
+     * bodies outside of the area are excluded by the grid first, so the tree gets the same bodies
+     * @param store the store with the bodies
+     * @return the number of bodies that were excluded by this call
+     */
+    @Override
+    public int update(BodyStore store) {
+        int newlyExcluded = mesh.update(store);
+        return newlyExcluded + tree.update(store);
+    }
+
+    /**
+     * calculates the force for each body in the store as the sum of the long-range force of the grid
+     * and the short-range force of the tree. excluded bodies get a zero force
+     * @param store the store with the bodies
+     * @return a vector array with the calculated forces
+     */
+    @Override
+    public Vector3[] calculateForce(BodyStore store) {
+        int n = store.size();
+        double[] fx = new double[n], fy = new double[n], fz = new double[n];
+        calculateForce(store, fx, fy, fz);
+        return ForceSolver.toVectors(fx, fy, fz, n);
+    }
+
+    /**
+     * calculates the force for each body in the store and writes it into the arrays at the index of the body.
+     * the short-range forces of the tree are kept in buffers of the solver.
+     * excluded bodies get a zero force
+     * @param store the store with the bodies
+     * @param fx the x-components of the forces, at least store.size() entries
+     * @param fy the y-components of the forces
+     * @param fz the z-components of the forces
+     */
+    @Override
+    public void calculateForce(BodyStore store, double[] fx, double[] fy, double[] fz) {
+        int n = store.size();
+        if(shortX.length < n){
+            shortX = new double[n]; shortY = new double[n]; shortZ = new double[n];
+        }
+        mesh.calculateForce(store, fx, fy, fz);
+        tree.calculateForce(store, shortX, shortY, shortZ);
+        for(int i=0; i<n; i++){
+            fx[i] += shortX[i]; fy[i] += shortY[i]; fz[i] += shortZ[i];
+        }
+    }
+
+    /**
+     * calculates the force for some bodies of the store and writes it into the arrays at the index of the body,
+     * the entries of the other bodies are not changed. the grid interpolates and the tree walks only for these bodies.
+     * excluded bodies get a zero force
+     * @param store the store with the bodies
+     * @param indices the indices of the bodies in the store
+     * @param n the number of indices
+     * @param fx the x-components of the forces, at least store.size() entries
+     * @param fy the y-components of the forces
+     * @param fz the z-components of the forces
+     */
+    @Override
+    public void calculateForce(BodyStore store, int[] indices, int n, double[] fx, double[] fy, double[] fz) {
+        if(shortX.length < store.size()){
+            shortX = new double[store.size()]; shortY = new double[store.size()]; shortZ = new double[store.size()];
+        }
+        mesh.calculateForce(store, indices, n, fx, fy, fz);
+        tree.calculateForce(store, indices, n, shortX, shortY, shortZ);
+        for(int k=0; k<n; k++){
+            int i = indices[k];
+            fx[i] += shortX[i]; fy[i] += shortY[i]; fz[i] += shortZ[i];
+        }
+    }
+
+    /**
+     * draws the leaves of the tree
+     */
+    @Override
+    public void show() {
+        tree.show();
+    }
+}